@@ -0,0 +1,285 @@
+package ai.vitk.tok;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A dictionary answering "not a word" from a Bloom filter before its base
+ * dictionary is looked up. The filter holds hashes of syllable sequences:
+ * those of the words and those of the syllables which start a longer word,
+ * so that its cursor follows the syllables of a phrase by hashing them
+ * incrementally, only looking up the words which may be in the base dictionary.
+ * <p>
+ * The filter must be built from all the words of the base dictionary,
+ * otherwise some of them would never be found. Counters of the lookups
+ * tell how many of them the filter answered alone.
+ */
+public class BloomDictionary implements Dictionary, Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final long SEED = 0x2545F4914F6CDD1DL;
+  private static final long CONTINUATION = 0x9E3779B97F4A7C15L;
+
+  private final Dictionary base;
+  private final long[] bits;
+  private final long mask;
+  private final int numHashes;
+  private final LongAdder probes = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+  private final LongAdder falsePositives = new LongAdder();
+
+  private BloomDictionary(Dictionary base, int numKeys, double falsePositiveRate) {
+    this.base = base;
+    long m = (long) Math.ceil(-Math.max(numKeys, 1) * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    // a power of two number of bits, at least one long
+    long numBits = Math.max(64, Long.highestOneBit(m - 1) << 1);
+    this.bits = new long[(int) (numBits >>> 6)];
+    this.mask = numBits - 1;
+    this.numHashes = Math.max(1, (int) Math.round((double) numBits / Math.max(numKeys, 1) * Math.log(2)));
+  }
+
+  /**
+   * Puts a Bloom filter with a false positive rate of 1% in front of a lexicon.
+   *
+   * @param lexicon a lexicon
+   * @return a dictionary
+   */
+  public static BloomDictionary of(Lexicon lexicon) {
+    List<String> words = new ArrayList<>();
+    lexicon.forEachWord(words::add);
+    return of(lexicon, words, 0.01);
+  }
+
+  /**
+   * Puts a Bloom filter in front of a dictionary.
+   *
+   * @param base a dictionary
+   * @param words all the words of the dictionary.
+   * @param falsePositiveRate the expected rate of the lookups of non-words
+   *                          which pass the filter, e.g. 0.01.
+   * @return a dictionary
+   */
+  public static BloomDictionary of(Dictionary base, Iterable<String> words, double falsePositiveRate) {
+    if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+      throw new IllegalArgumentException("Invalid false positive rate: " + falsePositiveRate);
+    // each syllable of a word gives at most one key
+    int numKeys = 0;
+    for (String word : words) {
+      numKeys += syllables(word);
+    }
+    BloomDictionary dictionary = new BloomDictionary(base, numKeys, falsePositiveRate);
+    for (String word : words) {
+      dictionary.add(word);
+    }
+    return dictionary;
+  }
+
+  private static int syllables(String word) {
+    int n = 1;
+    for (int j = 0; j < word.length(); j++) {
+      if (word.charAt(j) == ' ')
+        n++;
+    }
+    return n;
+  }
+
+  private void add(String word) {
+    if (word.length() == 0)
+      return;
+    long h = SEED;
+    int begin = 0;
+    int end;
+    while ((end = word.indexOf(' ', begin)) >= 0) {
+      h = extend(h, hash(word, begin, end));
+      set(h ^ CONTINUATION);
+      begin = end + 1;
+    }
+    set(extend(h, hash(word, begin, word.length())));
+  }
+
+  /**
+   * Hashes the characters [begin, end) of a string.
+   */
+  private static long hash(String s, int begin, int end) {
+    long h = 0xCBF29CE484222325L;
+    for (int j = begin; j < end; j++) {
+      h ^= s.charAt(j);
+      h *= 0x100000001B3L;
+    }
+    return h;
+  }
+
+  /**
+   * Hashes a syllable sequence extended by one syllable.
+   */
+  private static long extend(long h, long syllable) {
+    h = h * CONTINUATION + syllable;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private void set(long key) {
+    long h2 = key >>> 32 | 1;
+    for (int i = 0; i < numHashes; i++) {
+      long bit = (key + i * h2) & mask;
+      bits[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  private boolean mightContain(long key) {
+    long h2 = key >>> 32 | 1;
+    for (int i = 0; i < numHashes; i++) {
+      long bit = (key + i * h2) & mask;
+      if ((bits[(int) (bit >>> 6)] & 1L << bit) == 0)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Looks up a word which passed the filter in the base dictionary.
+   */
+  private boolean confirm(String word) {
+    if (base.hasWord(word))
+      return true;
+    falsePositives.increment();
+    return false;
+  }
+
+  @Override
+  public boolean hasWord(String word) {
+    probes.increment();
+    if (word.length() > 0) {
+      long h = SEED;
+      int begin = 0;
+      int end;
+      while ((end = word.indexOf(' ', begin)) >= 0) {
+        h = extend(h, hash(word, begin, end));
+        begin = end + 1;
+      }
+      if (mightContain(extend(h, hash(word, begin, word.length()))))
+        return confirm(word);
+    }
+    rejections.increment();
+    return false;
+  }
+
+  @Override
+  public boolean isPrefix(String s) {
+    return base.isPrefix(s);
+  }
+
+  @Override
+  public Dictionary.Cursor cursor(String[] syllables) {
+    long[] hashes = new long[syllables.length];
+    for (int j = 0; j < syllables.length; j++) {
+      hashes[j] = hash(syllables[j], 0, syllables[j].length());
+    }
+    return new Cursor(syllables, hashes);
+  }
+
+  /**
+   * Computes the statistics of the base dictionary, the filter being added to its size.
+   */
+  @Override
+  public DictionaryStatistics statistics() {
+    DictionaryStatistics statistics = base.statistics();
+    if (statistics == null)
+      return null;
+    DictionaryStatistics filter = new DictionaryStatistics.Builder().bytes(DictionaryStatistics.array(bits.length, 8)).build();
+    return DictionaryStatistics.sum(statistics, filter);
+  }
+
+  /**
+   * Gets the number of words looked up, by {@link #hasWord(String)} or by the cursors
+   * as they move to the next syllable.
+   *
+   * @return the number of lookups.
+   */
+  public long probes() {
+    return probes.sum();
+  }
+
+  /**
+   * Gets the number of lookups answered by the filter alone.
+   *
+   * @return the number of words rejected by the filter.
+   */
+  public long rejections() {
+    return rejections.sum();
+  }
+
+  /**
+   * Gets the number of lookups which passed the filter but were not words
+   * of the base dictionary.
+   *
+   * @return the number of false positives.
+   */
+  public long falsePositives() {
+    return falsePositives.sum();
+  }
+
+  private class Cursor implements Dictionary.Cursor {
+    private final String[] syllables;
+    private final long[] hashes;
+    private int start;
+    private int position;
+    private long h;
+    private boolean word;
+    private boolean confirmed;
+    private boolean continued;
+
+    Cursor(String[] syllables, long[] hashes) {
+      this.syllables = syllables;
+      this.hashes = hashes;
+    }
+
+    @Override
+    public void start(int position) {
+      this.start = position;
+      this.position = position;
+      this.h = SEED;
+      this.word = false;
+      this.continued = true;
+    }
+
+    @Override
+    public boolean next() {
+      if (!continued || position >= syllables.length) {
+        word = continued = false;
+        return false;
+      }
+      h = extend(h, hashes[position++]);
+      word = mightContain(h);
+      continued = mightContain(h ^ CONTINUATION);
+      confirmed = false;
+      probes.increment();
+      if (!word)
+        rejections.increment();
+      return word || continued;
+    }
+
+    @Override
+    public boolean isWord() {
+      if (word && !confirmed) {
+        StringBuilder candidate = new StringBuilder(syllables[start]);
+        for (int j = start + 1; j < position; j++) {
+          candidate.append(' ').append(syllables[j]);
+        }
+        word = confirm(candidate.toString());
+        confirmed = true;
+      }
+      return word;
+    }
+
+    @Override
+    public boolean canContinue() {
+      return continued;
+    }
+  }
+}
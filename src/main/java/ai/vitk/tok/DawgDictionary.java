@@ -0,0 +1,278 @@
+package ai.vitk.tok;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A dictionary stored as a minimal deterministic acyclic automaton (DAWG).
+ * Unlike the prefix tree of a {@link Lexicon}, which only shares prefixes,
+ * the automaton also shares the common suffixes of words, such as the last
+ * syllables of multi-syllable words or the case variants of names,
+ * which makes it several times smaller.
+ * <p>
+ * The automaton is built from a lexicon by merging its equivalent nodes bottom-up,
+ * and is stored in flat arrays like the file of a {@link MappedDictionary},
+ * to which it can be written with {@link #write(OutputStream)}.
+ */
+public class DawgDictionary implements Dictionary, Serializable {
+  private static final long serialVersionUID = 1L;
+  /**
+   * The first edge of each state shifted left by one, or'ed with 1 if a word
+   * ends at the state; with an extra entry marking the end of the edges.
+   * The initial state is 0.
+   */
+  private final int[] states;
+  private final char[] labels;
+  private final int[] targets;
+
+  private DawgDictionary(int[] states, char[] labels, int[] targets) {
+    this.states = states;
+    this.labels = labels;
+    this.targets = targets;
+  }
+
+  /**
+   * Builds the minimal automaton recognizing the words of a lexicon.
+   *
+   * @param lexicon a lexicon
+   * @return a dictionary
+   */
+  public static DawgDictionary of(Lexicon lexicon) {
+    return new Builder().build(lexicon);
+  }
+
+  /**
+   * Builds the minimal automaton recognizing some words.
+   *
+   * @param words words
+   * @return a dictionary
+   */
+  public static DawgDictionary of(Iterable<String> words) {
+    Lexicon lexicon = new Lexicon();
+    for (String word : words) {
+      lexicon.addWord(word);
+    }
+    return of(lexicon);
+  }
+
+  /**
+   * Finds the target of the edge labelled by a character from a state.
+   * @return the target state or -1 if there is no such edge.
+   */
+  private int next(int s, char c) {
+    int lo = states[s] >>> 1;
+    int hi = (states[s + 1] >>> 1) - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (labels[mid] < c)
+        lo = mid + 1;
+      else if (labels[mid] > c)
+        hi = mid - 1;
+      else return targets[mid];
+    }
+    return -1;
+  }
+
+  private int walk(String s) {
+    int state = 0;
+    for (int j = 0; j < s.length() && state >= 0; j++) {
+      state = next(state, s.charAt(j));
+    }
+    return state;
+  }
+
+  @Override
+  public boolean hasWord(String word) {
+    int s = walk(word);
+    return s >= 0 && (states[s] & 1) != 0;
+  }
+
+  @Override
+  public boolean isPrefix(String s) {
+    return s.length() > 0 && walk(s) >= 0;
+  }
+
+  @Override
+  public Dictionary.Cursor cursor(String[] syllables) {
+    return new Cursor(syllables);
+  }
+
+  /**
+   * Gets the number of states of the automaton.
+   *
+   * @return the number of states.
+   */
+  public int numStates() {
+    return states.length - 1;
+  }
+
+  /**
+   * Gets the number of edges of the automaton.
+   *
+   * @return the number of edges.
+   */
+  public int numEdges() {
+    return labels.length;
+  }
+
+  @Override
+  public DictionaryStatistics statistics() {
+    long bytes = DictionaryStatistics.array(states.length, 4)
+        + DictionaryStatistics.array(labels.length, 2)
+        + DictionaryStatistics.array(targets.length, 4);
+    return DictionaryStatistics.ofAutomaton(numStates(), s -> states[s], e -> targets[e],
+        e -> 1, e -> labels[e] == ' ' ? 1 : 0, 1, bytes);
+  }
+
+  /**
+   * Writes the automaton in the format of mapped dictionaries,
+   * to be opened by {@link MappedDictionary#open(String)}.
+   *
+   * @param outputStream an output stream
+   * @throws IOException
+   */
+  public void write(OutputStream outputStream) throws IOException {
+    MappedDictionary.write(states, labels, targets, outputStream);
+  }
+
+  private class Cursor implements Dictionary.Cursor {
+    private final String[] syllables;
+    private int position;
+    private boolean first;
+    private int state;
+
+    Cursor(String[] syllables) {
+      this.syllables = syllables;
+    }
+
+    @Override
+    public void start(int position) {
+      this.position = position;
+      this.state = 0;
+      this.first = true;
+    }
+
+    @Override
+    public boolean next() {
+      if (state < 0 || position >= syllables.length) {
+        state = -1;
+        return false;
+      }
+      if (!first)
+        state = DawgDictionary.this.next(state, ' ');
+      first = false;
+      String syllable = syllables[position++];
+      for (int j = 0; j < syllable.length() && state >= 0; j++) {
+        state = DawgDictionary.this.next(state, syllable.charAt(j));
+      }
+      return state >= 0;
+    }
+
+    @Override
+    public boolean isWord() {
+      return state >= 0 && (states[state] & 1) != 0;
+    }
+
+    @Override
+    public boolean canContinue() {
+      return state >= 0 && DawgDictionary.this.next(state, ' ') >= 0;
+    }
+  }
+
+  /**
+   * Merges the nodes of a prefix tree which have the same right language,
+   * that is the same word-end flag and the same edges to the same states,
+   * visiting the children of a node before the node itself.
+   */
+  private static final class Builder {
+    private final Map<Signature, Integer> register = new HashMap<>();
+    private int[] states = new int[1024];
+    private char[] labels = new char[1024];
+    private int[] targets = new int[1024];
+    private int numStates = 0;
+    private int numEdges = 0;
+
+    DawgDictionary build(Lexicon lexicon) {
+      add(lexicon.tree());
+      // renumber the states in reverse order so that the root,
+      // which is registered last, becomes state 0
+      int last = numStates - 1;
+      int[] s = new int[numStates + 1];
+      char[] l = new char[numEdges];
+      int[] t = new int[numEdges];
+      int edge = 0;
+      for (int k = 0; k < numStates; k++) {
+        int old = last - k;
+        int end = old < last ? states[old + 1] >>> 1 : numEdges;
+        s[k] = edge << 1 | (states[old] & 1);
+        for (int e = states[old] >>> 1; e < end; e++) {
+          l[edge] = labels[e];
+          t[edge] = last - targets[e];
+          edge++;
+        }
+      }
+      s[numStates] = edge << 1;
+      return new DawgDictionary(s, l, t);
+    }
+
+    private int add(Lexicon.Node node) {
+      int n = node.size;
+      boolean isWord = node.isWord();
+      int[] edges = new int[2 * n];
+      int k = 0;
+      for (int j = 0; j < n; j++) {
+        edges[k++] = node.labels[j];
+        edges[k++] = add(node.children[j]);
+      }
+      Signature signature = new Signature(isWord, edges);
+      Integer state = register.get(signature);
+      if (state == null) {
+        state = numStates;
+        register.put(signature, state);
+        if (numStates + 1 == states.length)
+          states = Arrays.copyOf(states, 2 * states.length);
+        if (numEdges + n > labels.length) {
+          int capacity = Math.max(2 * labels.length, numEdges + n);
+          labels = Arrays.copyOf(labels, capacity);
+          targets = Arrays.copyOf(targets, capacity);
+        }
+        states[numStates++] = numEdges << 1 | (isWord ? 1 : 0);
+        for (int j = 0; j < edges.length; j += 2) {
+          labels[numEdges] = (char) edges[j];
+          targets[numEdges] = edges[j + 1];
+          numEdges++;
+        }
+      }
+      return state;
+    }
+  }
+
+  private static final class Signature {
+    private final boolean isWord;
+    private final int[] edges;
+    private final int hash;
+
+    Signature(boolean isWord, int[] edges) {
+      this.isWord = isWord;
+      this.edges = edges;
+      this.hash = 31 * Arrays.hashCode(edges) + (isWord ? 1 : 0);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Signature))
+        return false;
+      Signature other = (Signature) obj;
+      return isWord == other.isWord && Arrays.equals(edges, other.edges);
+    }
+  }
+}
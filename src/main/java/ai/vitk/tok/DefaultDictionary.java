@@ -1,10 +1,14 @@
 package ai.vitk.tok;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * phuonglh, 4/2/18, 12:34 PM
  * <p>
+ * The default dictionary: the bundled lexicon and the extra word list, 
+ * shared through {@link Lexicons}.
  */
 public class DefaultDictionary implements Dictionary, Serializable {
   
@@ -14,14 +18,46 @@ public class DefaultDictionary implements Dictionary, Serializable {
   
   protected DefaultDictionary() {
   }
+
+  /**
+   * Loads the default dictionary in the background, so that the first
+   * tokenizer does not block while the lexicons are read.
+   *
+   * @return the future default dictionary.
+   */
+  public static CompletableFuture<Dictionary> loadAsync() {
+    return Lexicons.loadAsync(Lexicons.CORE, Lexicons.EXTRA).thenApplyAsync(dictionary -> Data.INSTANCE);
+  }
   
-  private final Lexicon lexicon = new Lexicon().load(Lexicon.class.getResourceAsStream("/tok/lexicon.xml"))
-      .additionalLexicon("/tok/provinces.txt").additionalLexicon("/tok/districts.txt")
-      .additionalLexicon("/tok/extra.txt");
+  private final transient Dictionary lexicon = Lexicons.get(Lexicons.CORE, Lexicons.EXTRA);
   
   @Override
   public boolean hasWord(String word) {
     return lexicon.hasWord(word);
   }
   
+  @Override
+  public boolean hasLowerCaseWord(String word) {
+    return lexicon.hasLowerCaseWord(word);
+  }
+  
+  @Override
+  public boolean isPrefix(String s) {
+    return lexicon.isPrefix(s);
+  }
+  
+  @Override
+  public Cursor cursor(String[] syllables) {
+    return lexicon.cursor(syllables);
+  }
+  
+  @Override
+  public DictionaryStatistics statistics() {
+    return lexicon.statistics();
+  }
+  
+  private Object readResolve() throws ObjectStreamException {
+    return Data.INSTANCE;
+  }
+  
 }
@@ -5,4 +5,81 @@ package ai.vitk.tok;
  */
 public interface Dictionary {
   boolean hasWord(String word);
+
+  /**
+   * Checks the existence of the lowercase form of a word. Dictionaries which fold
+   * the case of their words should override this method to look the word up
+   * without building its lowercase copy.
+   *
+   * @param word
+   * @return true/false
+   */
+  default boolean hasLowerCaseWord(String word) {
+    return hasWord(word.toLowerCase());
+  }
+
+  /**
+   * Verifies whether a string is the prefix of a word in the dictionary. A dictionary
+   * which cannot tell answers <code>true</code>, which is always safe since the
+   * answer is only used to stop looking for longer words.
+   *
+   * @param s
+   * @return true/false
+   */
+  default boolean isPrefix(String s) {
+    return true;
+  }
+
+  /**
+   * Creates a cursor which walks the words made of consecutive syllables of a phrase.
+   * Dictionaries should override this method to walk their own structure
+   * incrementally; the default cursor builds each candidate word and looks it up.
+   *
+   * @param syllables the syllables of a phrase.
+   * @return a cursor
+   */
+  default Cursor cursor(String[] syllables) {
+    return new StringCursor(this, syllables);
+  }
+
+  /**
+   * Gets the size and the shape of the dictionary, computed by a walk through it.
+   * A dictionary which cannot tell answers <code>null</code>.
+   *
+   * @return statistics, or <code>null</code>.
+   */
+  default DictionaryStatistics statistics() {
+    return null;
+  }
+
+  /**
+   * A cursor over the syllables of a phrase. After {@link #start(int)}, each call
+   * to {@link #next()} extends the candidate word by the next syllable, the syllables
+   * of a word being separated by a space. A cursor is used by one thread at a time.
+   */
+  interface Cursor {
+    /**
+     * Moves the cursor to a syllable, the candidate word being empty.
+     * @param position the position of a syllable in the phrase.
+     */
+    void start(int position);
+
+    /**
+     * Extends the candidate word by the next syllable.
+     * @return <code>false</code> if there is no more syllable or if no word of the
+     * dictionary starts with the candidate, <code>true</code> otherwise.
+     */
+    boolean next();
+
+    /**
+     * @return <code>true</code> if the candidate is a word of the dictionary.
+     */
+    boolean isWord();
+
+    /**
+     * @return <code>true</code> if some word of the dictionary starts with the
+     * candidate followed by a space, that is if a longer word may be found.
+     */
+    boolean canContinue();
+  }
 }
@@ -0,0 +1,266 @@
+package ai.vitk.tok;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The size and the shape of a dictionary: its numbers of words and of nodes,
+ * its longest words, how its nodes branch and an estimate of the memory it holds.
+ * <p>
+ * The memory is estimated from the arrays and the objects of the dictionary,
+ * as laid out by a 64-bit JVM with compressed references, the mapped files
+ * being counted as well.
+ */
+public final class DictionaryStatistics implements Serializable {
+  private static final long serialVersionUID = 1L;
+  /** The last bucket of the fan-out histogram, which counts the nodes with more children too. */
+  public static final int MAX_FAN_OUT = 32;
+
+  private final long numWords;
+  private final long numNodes;
+  private final int maxWordLength;
+  private final int maxWordSyllables;
+  private final long[] fanOut;
+  private final long estimatedBytes;
+
+  private DictionaryStatistics(long numWords, long numNodes, int maxWordLength, int maxWordSyllables, long[] fanOut, long estimatedBytes) {
+    this.numWords = numWords;
+    this.numNodes = numNodes;
+    this.maxWordLength = maxWordLength;
+    this.maxWordSyllables = maxWordSyllables;
+    this.fanOut = fanOut;
+    this.estimatedBytes = estimatedBytes;
+  }
+
+  /**
+   * Adds up the statistics of several dictionaries, e.g. those of a union, a word
+   * of several dictionaries being counted in each of them.
+   *
+   * @param statistics the statistics of some dictionaries.
+   * @return their sum, or <code>null</code> if the statistics of a dictionary are unknown.
+   */
+  public static DictionaryStatistics sum(DictionaryStatistics... statistics) {
+    long numWords = 0;
+    long numNodes = 0;
+    int maxWordLength = 0;
+    int maxWordSyllables = 0;
+    long[] fanOut = new long[MAX_FAN_OUT + 1];
+    long estimatedBytes = 0;
+    for (DictionaryStatistics s : statistics) {
+      if (s == null)
+        return null;
+      numWords += s.numWords;
+      numNodes += s.numNodes;
+      maxWordLength = Math.max(maxWordLength, s.maxWordLength);
+      maxWordSyllables = Math.max(maxWordSyllables, s.maxWordSyllables);
+      for (int j = 0; j <= MAX_FAN_OUT; j++) {
+        fanOut[j] += s.fanOut[j];
+      }
+      estimatedBytes += s.estimatedBytes;
+    }
+    return new DictionaryStatistics(numWords, numNodes, maxWordLength, maxWordSyllables, fanOut, estimatedBytes);
+  }
+
+  /**
+   * @return the number of words.
+   */
+  public long numWords() {
+    return numWords;
+  }
+
+  /**
+   * @return the number of nodes or states, the root excluded.
+   */
+  public long numNodes() {
+    return numNodes;
+  }
+
+  /**
+   * @return the number of characters of the longest word, its spaces included.
+   */
+  public int maxWordLength() {
+    return maxWordLength;
+  }
+
+  /**
+   * @return the number of syllables of the word having the most syllables.
+   */
+  public int maxWordSyllables() {
+    return maxWordSyllables;
+  }
+
+  /**
+   * Gets the number of nodes having some number of children, the root included.
+   *
+   * @param children a number of children, the last bucket {@link #MAX_FAN_OUT}
+   *                 counting the nodes with at least that many children.
+   * @return a number of nodes.
+   */
+  public long fanOut(int children) {
+    return fanOut[Math.min(children, MAX_FAN_OUT)];
+  }
+
+  /**
+   * @return the fan-out histogram, indexed by the number of children.
+   * @see #fanOut(int)
+   */
+  public long[] fanOutHistogram() {
+    return fanOut.clone();
+  }
+
+  /**
+   * @return the estimated number of bytes held by the dictionary.
+   */
+  public long estimatedBytes() {
+    return estimatedBytes;
+  }
+
+  @Override
+  public String toString() {
+    int last = MAX_FAN_OUT;
+    while (last > 0 && fanOut[last] == 0) {
+      last--;
+    }
+    return "#(words) = " + numWords
+        + ", #(nodes) = " + numNodes
+        + ", max length = " + maxWordLength
+        + ", max syllables = " + maxWordSyllables
+        + ", fan-out = " + Arrays.toString(Arrays.copyOf(fanOut, last + 1))
+        + ", ~" + (estimatedBytes >> 10) + " KB";
+  }
+
+  /**
+   * Estimates the size of an object, from the bytes of its fields.
+   */
+  static long object(int fieldBytes) {
+    return align(12 + fieldBytes);
+  }
+
+  /**
+   * Estimates the size of an array.
+   */
+  static long array(long length, int width) {
+    return align(16 + length * width);
+  }
+
+  /**
+   * Estimates the size of a string and of its characters.
+   */
+  static long string(String s) {
+    return object(12) + array(s.length(), 2);
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  /**
+   * Computes the statistics of an automaton stored in flat arrays: the first edge of
+   * each state shifted left by one, or'ed with 1 if a word ends at the state, with an
+   * extra entry marking the end of the edges. The targets of the edges of a state
+   * must come after the state, the initial state being 0, so that the words are
+   * counted from the last state back.
+   *
+   * @param numStates the number of states.
+   * @param state the entry of each state, from 0 to numStates.
+   * @param target the target state of each edge.
+   * @param length the number of characters added to a word by each edge.
+   * @param syllables the number of syllables added to a word by each edge.
+   * @param words the number of syllables of a word without edges, its length being 0.
+   * @param estimatedBytes the estimated size of the automaton.
+   * @return statistics
+   */
+  static DictionaryStatistics ofAutomaton(int numStates, IntUnaryOperator state, IntUnaryOperator target,
+                                          IntUnaryOperator length, IntUnaryOperator syllables, int words, long estimatedBytes) {
+    return ofAutomaton(numStates, state, target, length, syllables, words, s -> state.applyAsInt(s) & 1, estimatedBytes);
+  }
+
+  /**
+   * Computes the statistics of an automaton whose states may end several words,
+   * e.g. the case forms of a word.
+   *
+   * @param forms the number of words ending at each state.
+   * @see #ofAutomaton(int, IntUnaryOperator, IntUnaryOperator, IntUnaryOperator, IntUnaryOperator, int, long)
+   */
+  static DictionaryStatistics ofAutomaton(int numStates, IntUnaryOperator state, IntUnaryOperator target,
+                                          IntUnaryOperator length, IntUnaryOperator syllables, int words,
+                                          IntUnaryOperator forms, long estimatedBytes) {
+    // the number of words, and the longest words, from each state
+    long[] counts = new long[numStates];
+    int[] lengths = new int[numStates];
+    int[] syllableCounts = new int[numStates];
+    long[] fanOut = new long[MAX_FAN_OUT + 1];
+    for (int s = numStates - 1; s >= 0; s--) {
+      int first = state.applyAsInt(s) >>> 1;
+      int end = state.applyAsInt(s + 1) >>> 1;
+      int numForms = forms.applyAsInt(s);
+      boolean isWord = numForms > 0;
+      long count = numForms;
+      int maxLength = isWord ? 0 : -1;
+      int maxSyllables = isWord ? words : -1;
+      for (int e = first; e < end; e++) {
+        int t = target.applyAsInt(e);
+        count += counts[t];
+        if (lengths[t] >= 0) {
+          maxLength = Math.max(maxLength, lengths[t] + length.applyAsInt(e));
+          maxSyllables = Math.max(maxSyllables, syllableCounts[t] + syllables.applyAsInt(e));
+        }
+      }
+      counts[s] = count;
+      lengths[s] = maxLength;
+      syllableCounts[s] = maxSyllables;
+      fanOut[Math.min(end - first, MAX_FAN_OUT)]++;
+    }
+    if (numStates == 0 || counts[0] == 0)
+      return new DictionaryStatistics(0, Math.max(0, numStates - 1), 0, 0, fanOut, estimatedBytes);
+    return new DictionaryStatistics(counts[0], numStates - 1, lengths[0], syllableCounts[0], fanOut, estimatedBytes);
+  }
+
+  /**
+   * Accumulates the statistics of a dictionary node by node.
+   */
+  static final class Builder {
+    private long numWords;
+    private long numNodes;
+    private int maxWordLength;
+    private int maxWordSyllables;
+    private final long[] fanOut = new long[MAX_FAN_OUT + 1];
+    private long estimatedBytes;
+
+    /**
+     * Counts a node other than the root.
+     */
+    Builder node(int children) {
+      numNodes++;
+      return root(children);
+    }
+
+    /**
+     * Counts the children of the root.
+     */
+    Builder root(int children) {
+      fanOut[Math.min(children, MAX_FAN_OUT)]++;
+      return this;
+    }
+
+    /**
+     * Counts some words of the same length and syllables.
+     */
+    Builder words(int count, int length, int syllables) {
+      numWords += count;
+      maxWordLength = Math.max(maxWordLength, length);
+      maxWordSyllables = Math.max(maxWordSyllables, syllables);
+      return this;
+    }
+
+    Builder bytes(long bytes) {
+      estimatedBytes += bytes;
+      return this;
+    }
+
+    DictionaryStatistics build() {
+      return new DictionaryStatistics(numWords, numNodes, maxWordLength, maxWordSyllables, fanOut.clone(), estimatedBytes);
+    }
+  }
+}
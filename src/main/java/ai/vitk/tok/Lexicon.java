@@ -1,14 +1,16 @@
 package ai.vitk.tok;
 
-import ai.vitk.tok.jaxb.N;
-import ai.vitk.tok.jaxb.ObjectFactory;
-
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.*;
-import java.util.LinkedList;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 /**
  * @author Phuong LE-HONG, <phuonglh@gmail.com>
@@ -16,14 +18,52 @@ import java.util.LinkedList;
  *         A lexicon (dictionary) implementation using prefix tree data
  *         structure.
  *         <p>
+ *         The labels of the tree are case-folded, so that a word is stored once
+ *         whatever its case: the node where a word ends keeps the case forms of the
+ *         word, as masks having a bit set for each uppercase character. A lexicon is
+ *         either read from an XML file with {@link #load(InputStream)}
+ *         or read from the compiled binary format produced by {@link LexiconCompiler}
+ *         with {@link #loadBinary(InputStream)}. The binary format is laid out as follows
+ *         (all numbers are big-endian):
+ *         <pre>
+ *         magic    4 bytes  'V' 'L' 'E' 'X'
+ *         version  int      {@link #BINARY_VERSION}
+ *         numNodes int      number of nodes, the root excluded (version 1
+ *                           also counted one node per word end)
+ *         root     the root node: a char, a flag byte and its number n of
+ *                  children as a varint. Bit 1 of the flag is set if a word ends
+ *                  at this node in lowercase; bit 2 if other forms of the word end
+ *                  at this node, their number and their case masks following the
+ *                  flag as varints
+ *         index    n entries: the char of a child of the root and the length
+ *                  in bytes of its shard, as an int
+ *         shards   the subtrees of the children of the root, each in depth-first
+ *                  pre-order, their nodes being encoded like the root.
+ *         </pre>
+ *         The shards are read in parallel. Versions 1 and 2 have no index, the
+ *         whole tree being stored in pre-order after the header. Versions 1 to 3
+ *         store the words in their original cases, one bit of the flag telling
+ *         whether a word ends at a node; their words are folded when read.
  */
-public class Lexicon implements Serializable {
+public class Lexicon implements Dictionary, Serializable {
+  static final byte[] BINARY_MAGIC = {'V', 'L', 'E', 'X'};
+  static final int BINARY_VERSION = 4;
+  /** The number of characters of a word whose case is kept in a case mask. */
+  static final int MASK_LENGTH = 64;
+  /** The labels of the characters of the Latin blocks, the Vietnamese letters included. */
+  private static final char[] FOLDED = new char[0x2000];
+
+  static {
+    for (char c = 0; c < FOLDED.length; c++) {
+      char f = Character.toLowerCase(c);
+      FOLDED[c] = f == c || Character.toUpperCase(f) == c ? f : c;
+    }
+  }
+  
   private Node root;
   private int numNodes = 0;
-  private static ObjectFactory FACTORY = new ObjectFactory();
-  static final Lexicon INSTANCE = new Lexicon().load(Lexicon.class.getResourceAsStream("/tok/lexicon.xml"))
-      .additionalLexicon("/tok/provinces.txt").additionalLexicon("/tok/districts.txt")
-      .additionalLexicon("/tok/vcm.txt");
+  private int numWords = 0;
+  private boolean frozen = false;
   
   /**
    * Creates an empty lexicon.
@@ -33,13 +73,66 @@ public class Lexicon implements Serializable {
   }
 
   /**
-   * Checks the existence of a word in the lexicon.
+   * Folds a character of a word to the label of its node: its lowercase form,
+   * unless uppercasing it does not give back the character or the character is
+   * beyond those of a case mask, the character being then its own label.
+   */
+  static char fold(char c, int position) {
+    if (position >= MASK_LENGTH)
+      return c;
+    if (c < FOLDED.length)
+      return FOLDED[c];
+    char f = Character.toLowerCase(c);
+    return f == c || Character.toUpperCase(f) == c ? f : c;
+  }
+
+  /**
+   * Checks the existence of a word in the lexicon, in this very case.
    *
    * @param word
    * @return true/false
    */
+  @Override
   public boolean hasWord(String word) {
-    return root.hasWord(word, 0);
+    Node n = root;
+    long mask = 0;
+    for (int pos = 0; pos < word.length() && n != null; pos++) {
+      char c = word.charAt(pos);
+      char label = fold(c, pos);
+      if (label != c)
+        mask |= 1L << pos;
+      n = n.findChild(label);
+    }
+    return n != null && n.hasForm(mask);
+  }
+
+  /**
+   * Checks the existence of a word in the lexicon, in any case.
+   *
+   * @param word
+   * @return true/false
+   */
+  public boolean hasWordIgnoreCase(String word) {
+    Node n = root;
+    for (int pos = 0; pos < word.length() && n != null; pos++) {
+      n = n.findChild(fold(word.charAt(pos), pos));
+    }
+    return n != null && n.isWord();
+  }
+
+  /**
+   * Checks the existence of the lowercase form of a word, without building it.
+   *
+   * @param word
+   * @return true/false
+   */
+  @Override
+  public boolean hasLowerCaseWord(String word) {
+    Node n = root;
+    for (int pos = 0; pos < word.length() && n != null; pos++) {
+      n = n.findChild(fold(Character.toLowerCase(word.charAt(pos)), pos));
+    }
+    return n != null && n.lower;
   }
 
   /**
@@ -47,80 +140,154 @@ public class Lexicon implements Serializable {
    *
    * @param word
    * @return <code>true</code> if the word is added, <code>false</code> otherwise.
+   * @throws IllegalStateException if the lexicon is frozen.
    */
   public boolean addWord(String word) {
+    if (frozen)
+      throw new IllegalStateException("The lexicon is frozen");
+    return insert(word);
+  }
+
+  private boolean insert(CharSequence word) {
     if (word.length() == 0)
       return false;
-    if (hasWord(word))
-      return false;
     Node n = root;
-    int pos = 0;
-    while (pos < word.length() && n != null) {
-      // search a child of numNodes which has the same character
-      char k = word.charAt(pos);
-      boolean found = false;
-      for (Node fils : n.children) {
-        if (fils.c == k) {
-          found = true;
-          n = fils;
-          pos++;
-        }
-      }
-      if (!found) {
-        break;
-      }
-    }
-    // create new nodes for the rest of the string
-    for (int j = pos; j < word.length(); j++) {
-      Node u = new Node(word.charAt(j));
-      n.addChild(u);
-      n = u;
+    long mask = 0;
+    for (int pos = 0; pos < word.length(); pos++) {
+      char c = word.charAt(pos);
+      char label = fold(c, pos);
+      if (label != c)
+        mask |= 1L << pos;
+      Node parent = n;
+      int size = parent.size;
+      n = parent.addChild(label);
+      if (parent.size != size)
+        numNodes++;
+      // the mask so far is the case of the prefix ending at this node
+      if (pos < word.length() - 1)
+        n.below |= mask == 0 ? Node.LOWER_BELOW : Node.CAPITAL_BELOW;
     }
-    // the last node contains special character '*' 
-    n.addChild(new Node('*'));
-    numNodes += (word.length() - pos + 1);
+    if (!n.addForm(mask))
+      return false;
+    numWords++;
     return true;
   }
 
   /**
-   * Verifies whether a string is the prefix of a word in the lexicon.
+   * Trims the nodes of the lexicon to their exact sizes and makes it read-only,
+   * any further {@link #addWord(String)} throwing an {@link IllegalStateException}.
+   *
+   * @return this lexicon.
+   */
+  public Lexicon freeze() {
+    if (!frozen) {
+      root.trim();
+      frozen = true;
+    }
+    return this;
+  }
+
+  /**
+   * Verifies whether a string is the prefix of a word in the lexicon. The answer
+   * is exact for a prefix in lowercase; a prefix with uppercase characters is only
+   * known to be that of a word whose case differs after its first characters,
+   * so that it may be taken as a prefix when no word below has its very case.
    *
    * @param s
    * @return true/false
    */
+  @Override
   public boolean isPrefix(String s) {
     if (s.length() == 0)
       return false;
     Node n = root;
-    int pos = 0;
-    while (pos < s.length() && n != null) {
-      // search for a child which has the same character
-      char k = s.charAt(pos);
-      boolean found = false;
-      for (Node fils : n.children) {
-        if (fils.c == k) {
-          found = true;
-          n = fils;
-          pos++;
+    long mask = 0;
+    for (int pos = 0; pos < s.length() && n != null; pos++) {
+      char c = s.charAt(pos);
+      char label = fold(c, pos);
+      if (label != c)
+        mask |= 1L << pos;
+      n = n.findChild(label);
+    }
+    if (n == null)
+      return false;
+    // a word ending here or below must have the case of the prefix
+    long low = s.length() >= MASK_LENGTH ? -1L : (1L << s.length()) - 1;
+    return n.hasForm(mask, low) || (n.below & (mask == 0 ? Node.LOWER_BELOW : Node.CAPITAL_BELOW)) != 0;
+  }
+
+  @Override
+  public Dictionary.Cursor cursor(String[] syllables) {
+    return new Cursor(syllables);
+  }
+
+  /**
+   * Performs an action for each word of the lexicon, in the order of their folded
+   * characters, the forms of a word coming in the order they were added, the
+   * lowercase form first.
+   *
+   * @param action an action
+   */
+  public void forEachWord(Consumer<String> action) {
+    forEachWord(root, new StringBuilder(), action);
+  }
+
+  private static void forEachWord(Node node, StringBuilder prefix, Consumer<String> action) {
+    if (node.lower)
+      action.accept(prefix.toString());
+    if (node.masks != null) {
+      for (long mask : node.masks) {
+        char[] word = new char[prefix.length()];
+        for (int pos = 0; pos < word.length; pos++) {
+          char c = prefix.charAt(pos);
+          word[pos] = pos < MASK_LENGTH && (mask >>> pos & 1) != 0 ? Character.toUpperCase(c) : c;
         }
-      }
-      if (!found) {
-        return false;
+        action.accept(new String(word));
       }
     }
-    return true;
+    for (int j = 0; j < node.size; j++) {
+      prefix.append(node.labels[j]);
+      forEachWord(node.children[j], prefix, action);
+      prefix.setLength(prefix.length() - 1);
+    }
   }
 
   /**
-   * Lists all the words of the lexicon in alphabetic order.
+   * Lists all the words of the lexicon.
    */
   public void listAlphabeticWords() {
-    for (Node n : root.children)
-      n.listAlphabeticWords(new LinkedList<>());
+    forEachWord(System.out::println);
+  }
+
+  /**
+   * @return the root of the folded prefix tree.
+   */
+  Node root() {
+    return root;
   }
 
   /**
-   * Gets the number of nodes in this lexicon tree.
+   * Builds the prefix tree of the words in their original cases, for the 
+   * structures which do not fold the case; a word ends at the nodes whose
+   * lowercase form is set.
+   *
+   * @return the root of a new tree.
+   */
+  Node tree() {
+    Node top = new Node(root.c);
+    forEachWord(word -> {
+      Node n = top;
+      for (int pos = 0; pos < word.length(); pos++) {
+        n = n.addChild(word.charAt(pos));
+      }
+      n.lower = true;
+    });
+    top.trim();
+    return top;
+  }
+
+  /**
+   * Gets the number of nodes in this lexicon tree, the root excluded.
    *
    * @return
    */
@@ -128,6 +295,49 @@ public class Lexicon implements Serializable {
     return numNodes;
   }
 
+  /**
+   * Gets the number of words in this lexicon, each form of a word being counted.
+   *
+   * @return
+   */
+  public int numWords() {
+    return numWords;
+  }
+
+  @Override
+  public DictionaryStatistics statistics() {
+    DictionaryStatistics.Builder builder = new DictionaryStatistics.Builder();
+    builder.root(root.size).bytes(DictionaryStatistics.object(12 + 1) + bytes(root));
+    for (int j = 0; j < root.size; j++) {
+      statistics(root.children[j], 1, 1, builder);
+    }
+    return builder.build();
+  }
+
+  private static void statistics(Node node, int length, int syllables, DictionaryStatistics.Builder builder) {
+    if (node.c == ' ')
+      syllables++;
+    builder.node(node.size).bytes(bytes(node));
+    if (node.isWord())
+      builder.words(node.numForms(), length, syllables);
+    for (int j = 0; j < node.size; j++) {
+      statistics(node.children[j], length + 1, syllables, builder);
+    }
+  }
+
+  /**
+   * Estimates the size of a node and of its arrays.
+   */
+  private static long bytes(Node node) {
+    // c, lower, below, masks, labels, children and size
+    long bytes = DictionaryStatistics.object(2 + 1 + 1 + 4 + 4 + 4 + 4);
+    if (node.labels != Node.NO_LABELS)
+      bytes += DictionaryStatistics.array(node.labels.length, 2) + DictionaryStatistics.array(node.children.length, 4);
+    if (node.masks != null)
+      bytes += DictionaryStatistics.array(node.masks.length, 8);
+    return bytes;
+  }
+
   /* (non-Javadoc)
    * @see java.lang.Object#toString()
    */
@@ -137,156 +347,678 @@ public class Lexicon implements Serializable {
   }
 
   /**
-   * Unmarshals dictionary from an XML file.
+   * Reads a dictionary from an XML file.
    *
    * @param fileName an XML file encoding a dictionary which is
    *                 previously saved by {@link #save(String)} method.
    */
   public Lexicon load(String fileName) {
-    try {
-      InputStream inputStream = new FileInputStream(fileName);
+    try (InputStream inputStream = new FileInputStream(fileName)) {
       return load(inputStream);
-    } catch (FileNotFoundException e) {
+    } catch (IOException e) {
       e.printStackTrace();
     }
     return null;
   }
 
+  /**
+   * Reads a dictionary from an XML stream, adding the words directly from the 
+   * parser events. Each <code>n</code> element is a node whose character is 
+   * its <code>c</code> attribute, a child <code>n</code> element with the character
+   * '*' marking the end of a word.
+   *
+   * @param inputStream an XML stream.
+   */
   public Lexicon load(InputStream inputStream) {
     try {
-      JAXBContext context = JAXBContext.newInstance("ai.vitk.tok.jaxb");
-      Unmarshaller unmarshaller = context.createUnmarshaller();
-      Object object = unmarshaller.unmarshal(inputStream);
-      if (object instanceof N) {
-        N n = (N) object;
-        root = loadNode(n);
-        return this;
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+      XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+      // the characters of the open elements below the root
+      StringBuilder path = new StringBuilder();
+      int depth = -1;
+      // the depth of the open word end, if any
+      int end = -1;
+      Node top = null;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          String c = reader.getAttributeValue(null, "c");
+          if (c == null || c.isEmpty())
+            throw new XMLStreamException("Node without character", reader.getLocation());
+          if (depth < 0) {
+            root = top = new Node(c.charAt(0));
+            numNodes = 0;
+            numWords = 0;
+          } else if (end >= 0) {
+            throw new XMLStreamException("Node inside a word end", reader.getLocation());
+          } else if (c.charAt(0) == '*') {
+            insert(path);
+            end = depth;
+          } else path.append(c.charAt(0));
+          depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+          if (end == depth)
+            end = -1;
+          else if (depth >= 0)
+            path.setLength(path.length() - 1);
+        }
       }
-    } catch (JAXBException e) {
+      reader.close();
+      if (top == null)
+        throw new XMLStreamException("No node");
+      top.trim();
+      return this;
+    } catch (XMLStreamException e) {
       e.printStackTrace();
     }
     return null;
   }
-  
-  private Node loadNode(N n) {
-    Node node = new Node(n.getC().charAt(0));
-    for (N k : n.getN()) {
-      Node c = loadNode(k);
-      node.addChild(c);
-    }
-    numNodes += n.getN().size();
-    return node;
-  }
 
   /**
-   * Marshals the lexicon to an XML file.
+   * Writes the lexicon to an XML file.
    *
    * @param fileName an XML file.
    */
   public void save(String fileName) {
+    try (OutputStream os = new FileOutputStream(fileName)) {
+      save(os);
+    } catch (IOException | XMLStreamException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Writes the lexicon to an XML stream, in the format read by {@link #load(InputStream)},
+   * the words keeping their original cases.
+   *
+   * @param outputStream an output stream.
+   * @throws XMLStreamException
+   */
+  public void save(OutputStream outputStream) throws XMLStreamException {
+    XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream, "UTF-8");
+    writer.writeStartDocument("UTF-8", "1.0");
+    // the nodes of the open elements, the index of their next child and
+    // whether their word end is still to be written
+    Node[] nodes = new Node[64];
+    int[] next = new int[64];
+    boolean[] word = new boolean[64];
+    int depth = 0;
+    Node top = tree();
+    nodes[0] = top;
+    word[0] = top.isWord();
+    writer.writeStartElement("n");
+    writer.writeAttribute("c", String.valueOf(top.c));
+    while (depth >= 0) {
+      Node node = nodes[depth];
+      int j = next[depth];
+      // the word end is sorted among the children
+      if (word[depth] && (j == node.size || node.labels[j] > '*')) {
+        writer.writeEmptyElement("n");
+        writer.writeAttribute("c", "*");
+        word[depth] = false;
+      }
+      if (j == node.size) {
+        writer.writeEndElement();
+        depth--;
+        continue;
+      }
+      next[depth]++;
+      Node child = node.children[j];
+      writer.writeStartElement("n");
+      writer.writeAttribute("c", String.valueOf(child.c));
+      if (++depth == nodes.length) {
+        nodes = Arrays.copyOf(nodes, 2 * depth);
+        next = Arrays.copyOf(next, 2 * depth);
+        word = Arrays.copyOf(word, 2 * depth);
+      }
+      nodes[depth] = child;
+      next[depth] = 0;
+      word[depth] = child.isWord();
+    }
+    writer.writeEndDocument();
+    writer.flush();
+  }
+
+  /**
+   * Reads a lexicon from its compiled binary form, built by {@link LexiconCompiler}.
+   *
+   * @param fileName a binary lexicon file.
+   */
+  public Lexicon loadBinary(String fileName) {
     try {
-      // create a marshaller
-      JAXBContext context = JAXBContext.newInstance("vn.vitk.tok.jaxb");
-      Marshaller marshaller = context.createMarshaller();
-      marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
-      // marshal the lexicon
-      try {
-        OutputStream os = new FileOutputStream(fileName);
-        marshaller.marshal(createN(root), os);
-        os.close();
-      } catch (IOException e) {
-        e.printStackTrace();
+      InputStream inputStream = new FileInputStream(fileName);
+      return loadBinary(inputStream);
+    } catch (FileNotFoundException e) {
+      e.printStackTrace();
+    }
+    return null;
+  }
+
+  /**
+   * Reads a binary lexicon, the subtrees of the root being read in parallel.
+   *
+   * @param inputStream a binary lexicon, which is closed.
+   */
+  public Lexicon loadBinary(InputStream inputStream) {
+    try (InputStream input = inputStream) {
+      NodeReader reader = new NodeReader(readFully(input));
+      for (int j = 0; j < BINARY_MAGIC.length; j++) {
+        if (reader.readByte() != BINARY_MAGIC[j])
+          throw new IOException("Not a binary lexicon");
+      }
+      int version = reader.readInt();
+      if (version < 1 || version > BINARY_VERSION)
+        throw new IOException("Unsupported binary lexicon version: " + version);
+      int expected = reader.readInt();
+      reader.folded = version >= 4;
+      Node top;
+      if (version < 3) {
+        top = reader.readNode();
+        numNodes = reader.numNodes;
+        numWords = reader.numWords;
+      } else top = readShards(reader);
+      // the first version counted the word ends as nodes
+      int actual = version == 1 ? numNodes + numWords : numNodes;
+      if (actual != expected)
+        throw new IOException("Corrupted binary lexicon: " + actual + " nodes read, " + expected + " expected");
+      if (reader.folded) {
+        root = top;
+        markBelow(root, new Node[64], 0);
+      } else {
+        // the words of the older versions are stored in their original cases
+        root = new Node(top.c);
+        numNodes = 0;
+        numWords = 0;
+        forEachWord(top, new StringBuilder(), this::insert);
+        root.trim();
       }
-    } catch (JAXBException e) {
+      return this;
+    } catch (IOException e) {
       e.printStackTrace();
     }
+    return null;
   }
 
-  private N createN(Node node) {
-    N n = FACTORY.createN();
-    n.setC(String.valueOf(node.c));
-    for (Node child : node.children) {
-      N c = createN(child);
-      n.getN().add(c);
+  /**
+   * Marks the cases of the words below the nodes of a subtree, the nodes above
+   * being on a path.
+   */
+  private static void markBelow(Node node, Node[] path, int depth) {
+    if (node.isWord()) {
+      // the prefix of a word ending at the node at depth d has d characters
+      for (int d = 1; d < depth; d++) {
+        long low = d >= MASK_LENGTH ? -1L : (1L << d) - 1;
+        if (node.lower)
+          path[d].below |= Node.LOWER_BELOW;
+        if (node.masks != null) {
+          for (long m : node.masks) {
+            path[d].below |= (m & low) == 0 ? Node.LOWER_BELOW : Node.CAPITAL_BELOW;
+          }
+        }
+      }
+    }
+    if (depth == path.length)
+      path = Arrays.copyOf(path, 2 * depth);
+    path[depth] = node;
+    for (int j = 0; j < node.size; j++) {
+      markBelow(node.children[j], path, depth + 1);
     }
-    return n;
   }
 
-  class Node implements Serializable {
-    private static final long serialVersionUID = 7858640386692889724L;
+  private static byte[] readFully(InputStream input) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(1 << 20);
+    byte[] buffer = new byte[1 << 16];
+    int n;
+    while ((n = input.read(buffer)) > 0) {
+      output.write(buffer, 0, n);
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Reads the root and its subtrees, each subtree being a shard whose length is
+   * given by the index, so that the shards are read in parallel.
+   */
+  private Node readShards(NodeReader reader) throws IOException {
+    Node node = new Node(reader.readChar());
+    reader.readForms(node);
+    int n = reader.readVarInt();
+    char[] labels = new char[n];
+    int[] offsets = new int[n + 1];
+    offsets[0] = reader.position + 6 * n;
+    for (int j = 0; j < n; j++) {
+      labels[j] = reader.readChar();
+      offsets[j + 1] = offsets[j] + reader.readInt();
+    }
+    NodeReader[] readers = new NodeReader[n];
+    Node[] shards = new Node[n];
+    try {
+      IntStream.range(0, n).parallel().forEach(j -> {
+        readers[j] = new NodeReader(reader.data, offsets[j], offsets[j + 1]);
+        readers[j].folded = reader.folded;
+        try {
+          shards[j] = readers[j].readNode();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    node.reserve(n);
+    numNodes = n;
+    numWords = reader.numWords;
+    for (int j = 0; j < n; j++) {
+      if (shards[j].c != labels[j] || readers[j].position != offsets[j + 1])
+        throw new IOException("Corrupted binary lexicon: bad shard " + labels[j]);
+      node.appendChild(shards[j]);
+      numNodes += readers[j].numNodes;
+      numWords += readers[j].numWords;
+    }
+    return node;
+  }
+
+  /**
+   * Writes the lexicon in its compiled binary form.
+   *
+   * @param fileName a binary lexicon file.
+   */
+  public void saveBinary(String fileName) {
+    try (OutputStream os = new FileOutputStream(fileName)) {
+      saveBinary(os);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  public void saveBinary(OutputStream outputStream) throws IOException {
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16));
+    output.write(BINARY_MAGIC);
+    output.writeInt(BINARY_VERSION);
+    output.writeInt(numNodes);
+    output.writeChar(root.c);
+    writeForms(root, output);
+    writeVarInt(output, root.size);
+    byte[][] shards = new byte[root.size][];
+    for (int j = 0; j < root.size; j++) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream shard = new DataOutputStream(bytes);
+      writeNode(root.children[j], shard);
+      shard.flush();
+      shards[j] = bytes.toByteArray();
+    }
+    for (int j = 0; j < root.size; j++) {
+      output.writeChar(root.labels[j]);
+      output.writeInt(shards[j].length);
+    }
+    for (byte[] shard : shards) {
+      output.write(shard);
+    }
+    output.flush();
+  }
+
+  private void writeNode(Node node, DataOutputStream output) throws IOException {
+    output.writeChar(node.c);
+    writeForms(node, output);
+    writeVarInt(output, node.size);
+    for (int j = 0; j < node.size; j++) {
+      writeNode(node.children[j], output);
+    }
+  }
+
+  private static void writeForms(Node node, DataOutputStream output) throws IOException {
+    output.writeByte((node.lower ? 1 : 0) | (node.masks != null ? 2 : 0));
+    if (node.masks != null) {
+      writeVarInt(output, node.masks.length);
+      for (long mask : node.masks) {
+        writeVarLong(output, mask);
+      }
+    }
+  }
+
+  /**
+   * Reads big-endian numbers and nodes from a part of a buffer, 
+   * counting the nodes and the words read.
+   */
+  private static final class NodeReader {
+    final byte[] data;
+    final int end;
+    int position;
+    int numNodes;
+    int numWords;
+    /** Whether the nodes have case-folded labels and case forms. */
+    boolean folded = true;
+
+    NodeReader(byte[] data) {
+      this(data, 0, data.length);
+    }
+
+    NodeReader(byte[] data, int position, int end) {
+      this.data = data;
+      this.position = position;
+      this.end = Math.min(end, data.length);
+    }
+
+    int readByte() throws IOException {
+      if (position >= end)
+        throw new EOFException("Truncated binary lexicon");
+      return data[position++] & 0xff;
+    }
+
+    char readChar() throws IOException {
+      return (char) (readByte() << 8 | readByte());
+    }
+
+    int readInt() throws IOException {
+      return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+    }
+
+    int readVarInt() throws IOException {
+      return (int) readVarLong();
+    }
+
+    long readVarLong() throws IOException {
+      long value = 0;
+      int shift = 0;
+      int b;
+      do {
+        b = readByte();
+        value |= (long) (b & 0x7f) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    /**
+     * Reads the flag of a node and its case masks.
+     */
+    void readForms(Node node) throws IOException {
+      int flag = readByte();
+      if (!folded) {
+        // a word in its original case
+        node.lower = flag != 0;
+      } else {
+        node.lower = (flag & 1) != 0;
+        if ((flag & 2) != 0) {
+          node.masks = new long[readVarInt()];
+          for (int j = 0; j < node.masks.length; j++) {
+            node.masks[j] = readVarLong();
+          }
+        }
+      }
+      numWords += node.numForms();
+    }
+
+    Node readNode() throws IOException {
+      char c = readChar();
+      Node node = new Node(c);
+      readForms(node);
+      int n = readVarInt();
+      node.reserve(n);
+      // children are stored in order, so that they can be appended
+      for (int j = 0; j < n; j++) {
+        node.appendChild(readNode());
+      }
+      numNodes += n;
+      return node;
+    }
+  }
+
+  private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+    writeVarLong(output, value & 0xffffffffL);
+  }
+
+  private static void writeVarLong(DataOutputStream output, long value) throws IOException {
+    while ((value & ~0x7fL) != 0) {
+      output.writeByte((int) (value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    output.writeByte((int) value);
+  }
+
+  /**
+   * Walks the prefix tree one syllable at a time, from the node reached 
+   * by the previous syllables.
+   */
+  class Cursor implements Dictionary.Cursor {
+    private final String[] syllables;
+    private int position;
+    private boolean first;
+    private Node node;
+    private int length;
+    private long mask;
+
+    Cursor(String[] syllables) {
+      this.syllables = syllables;
+    }
+
+    @Override
+    public void start(int position) {
+      this.position = position;
+      this.node = root;
+      this.first = true;
+      this.length = 0;
+      this.mask = 0;
+    }
+
+    @Override
+    public boolean next() {
+      if (node == null || position >= syllables.length) {
+        node = null;
+        return false;
+      }
+      if (!first) {
+        node = node.findChild(' ');
+        length++;
+      }
+      first = false;
+      String syllable = syllables[position++];
+      for (int j = 0; j < syllable.length() && node != null; j++) {
+        char c = syllable.charAt(j);
+        char label = fold(c, length);
+        if (label != c)
+          mask |= 1L << length;
+        length++;
+        node = node.findChild(label);
+      }
+      return node != null;
+    }
+
+    @Override
+    public boolean isWord() {
+      return node != null && node.hasForm(mask);
+    }
+
+    @Override
+    public boolean canContinue() {
+      return node != null && node.findChild(' ') != null;
+    }
+  }
+
+  /**
+   * A node of the prefix tree. The labels of its children are kept sorted in an
+   * array, next to the array of the children themselves, so that a child is found
+   * by a binary search instead of a walk through a list of nodes.
+   * <p>
+   * The forms of the word ending at a node are its lowercase form and the forms
+   * given by case masks, bit i of a mask being set if character i is uppercase.
+   */
+  static final class Node implements Serializable {
+    private static final long serialVersionUID = -4163398210472209418L;
+    static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
     char c;
-    LinkedList<Node> children = new LinkedList<Node>();
+    static final byte LOWER_BELOW = 1;
+    static final byte CAPITAL_BELOW = 2;
+    /** Whether the lowercase form of a word ends at this node. */
+    boolean lower;
+    /**
+     * The cases of the prefixes ending at this node of the words ending below it:
+     * {@link #LOWER_BELOW} if one is in lowercase, {@link #CAPITAL_BELOW} if one
+     * has an uppercase character.
+     */
+    byte below;
+    /** The case masks of the other forms, or null. */
+    long[] masks;
+    char[] labels = NO_LABELS;
+    Node[] children = NO_CHILDREN;
+    int size;
 
     Node(char c) {
       this.c = c;
     }
 
-    public void addChild(Node a) {
-      // add a child into its correct position
-      int index = 0;
-      while (index < children.size() && children.get(index).c < a.c) {
-        index++;
+    /**
+     * Makes room for a known number of children.
+     */
+    void reserve(int capacity) {
+      if (capacity > labels.length) {
+        labels = Arrays.copyOf(labels, capacity);
+        children = Arrays.copyOf(children, capacity);
       }
-      children.add(index, a);
     }
 
-    public boolean hasWord(String s, int pos) {
-      if (pos == s.length()) {
-        for (int j = 0; j < children.size(); j++) {
-          if (children.get(j).c == '*')
+    /**
+     * Tests whether the form of a word given by a case mask ends at this node.
+     */
+    boolean hasForm(long mask) {
+      if (mask == 0)
+        return lower;
+      if (masks != null) {
+        for (long m : masks) {
+          if (m == mask)
             return true;
         }
-        return false;
       }
-      for (int j = 0; j < children.size(); j++) {
-        Node n = children.get(j);
-        if (n.c == s.charAt(pos)) {
-          return n.hasWord(s, pos + 1);
+      return false;
+    }
+
+    /**
+     * Tests whether a form of a word ending at this node has the case of a prefix,
+     * given by its case mask and the mask of its characters.
+     */
+    boolean hasForm(long mask, long low) {
+      if (lower && mask == 0)
+        return true;
+      if (masks != null) {
+        for (long m : masks) {
+          if ((m & low) == mask)
+            return true;
         }
       }
       return false;
     }
 
-    public void listAlphabeticWords(LinkedList<Character> prefix) {
-      prefix.add(c);
-      for (Node n : children) {
-        if (n.c == '*') {
-          System.out.println(prefixToString(prefix));
-        } else {
-          n.listAlphabeticWords(prefix);
-        }
+    /**
+     * Adds the form of a word given by a case mask.
+     *
+     * @return <code>false</code> if the form already ends at this node.
+     */
+    boolean addForm(long mask) {
+      if (hasForm(mask))
+        return false;
+      if (mask == 0) {
+        lower = true;
+      } else if (masks == null) {
+        masks = new long[]{mask};
+      } else {
+        masks = Arrays.copyOf(masks, masks.length + 1);
+        masks[masks.length - 1] = mask;
       }
-      // backtracking
-      prefix.removeLast();
+      return true;
     }
 
-    private String prefixToString(LinkedList<Character> prefix) {
-      StringBuilder sb = new StringBuilder();
-      for (Character c : prefix) {
-        sb.append(c);
+    int numForms() {
+      return (lower ? 1 : 0) + (masks != null ? masks.length : 0);
+    }
+
+    private int indexOf(char c) {
+      int lo = 0;
+      int hi = size - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        if (labels[mid] < c)
+          lo = mid + 1;
+        else if (labels[mid] > c)
+          hi = mid - 1;
+        else return mid;
       }
-      return sb.toString();
+      return -(lo + 1);
+    }
+
+    /**
+     * Finds a child containing a character or creates it at its sorted position.
+     */
+    Node addChild(char c) {
+      int index = indexOf(c);
+      if (index >= 0)
+        return children[index];
+      index = -(index + 1);
+      if (size == labels.length) {
+        int capacity = Math.max(2, 2 * size);
+        labels = Arrays.copyOf(labels, capacity);
+        children = Arrays.copyOf(children, capacity);
+      }
+      System.arraycopy(labels, index, labels, index + 1, size - index);
+      System.arraycopy(children, index, children, index + 1, size - index);
+      Node node = new Node(c);
+      labels[index] = c;
+      children[index] = node;
+      size++;
+      return node;
+    }
+
+    /**
+     * Appends a child whose label is greater than those of the other children.
+     */
+    void appendChild(Node node) {
+      if (size == labels.length) {
+        int capacity = Math.max(2, 2 * size);
+        labels = Arrays.copyOf(labels, capacity);
+        children = Arrays.copyOf(children, capacity);
+      }
+      labels[size] = node.c;
+      children[size++] = node;
     }
 
+    /**
+     * Trims the arrays of this node and of its descendants to their sizes.
+     */
+    void trim() {
+      if (labels.length != size) {
+        labels = size == 0 ? NO_LABELS : Arrays.copyOf(labels, size);
+        children = size == 0 ? NO_CHILDREN : Arrays.copyOf(children, size);
+      }
+      for (int j = 0; j < size; j++)
+        children[j].trim();
+    }
+
+    /**
+     * Prints the subtree with word ends as '*' leaves, sorted among the children.
+     */
     @Override
     public String toString() {
-      if (children.size() == 0) {
+      if (size == 0 && !isWord()) {
         return "*";
       }
       StringBuilder sb = new StringBuilder();
       sb.append(c);
       sb.append('(');
-      if (children.size() == 1) {
-        Node node = children.getFirst();
-        sb.append(node);
-      } else {
-        for (int j = 0; j < children.size() - 1; j++) {
-          Node noeud = children.get(j);
-          sb.append(noeud);
-          sb.append(", ");
+      boolean mark = isWord();
+      for (int j = 0; j < size; j++) {
+        if (mark && labels[j] > '*') {
+          sb.append("*, ");
+          mark = false;
         }
-        sb.append(children.getLast());
+        sb.append(children[j]);
+        if (j < size - 1 || mark)
+          sb.append(", ");
       }
+      if (mark)
+        sb.append('*');
       sb.append(')');
       return sb.toString();
     }
@@ -299,11 +1031,8 @@ public class Lexicon implements Serializable {
      * @return a node or <code>null</code>.
      */
     public Node findChild(char c) {
-      for (Node n : children) {
-        if (n.c == c)
-          return n;
-      }
-      return null;
+      int index = indexOf(c);
+      return index >= 0 ? children[index] : null;
     }
 
     /**
@@ -312,14 +1041,23 @@ public class Lexicon implements Serializable {
      * @return <code>true</code> or <code>false</code>
      */
     public boolean isWord() {
-      return findChild('*') != null;
+      return lower || masks != null;
     }
   }
 
   public Lexicon additionalLexicon(String resourcePath) {
+    return additionalLexicon(Lexicon.class.getResourceAsStream(resourcePath));
+  }
+
+  /**
+   * Adds the words of a list, one word per line, both in their original
+   * and in their lowercase forms.
+   *
+   * @param inputStream a UTF-8 word list.
+   */
+  public Lexicon additionalLexicon(InputStream inputStream) {
     try {
-      InputStream inputStream = Lexicon.class.getResourceAsStream(resourcePath);
-      BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+      BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
       String word;
       while ((word = reader.readLine()) != null) {
         addWord(word);
@@ -332,13 +1070,14 @@ public class Lexicon implements Serializable {
   }
   
   public static void main(String[] args) {
-    System.out.println("#(nodes) = " + INSTANCE.numNodes());
+    Dictionary lexicon = Lexicons.get(Lexicons.CORE, Lexicons.VCM);
+    System.out.println(Lexicons.get(Lexicons.CORE).statistics());
     System.out.println("Done.");
-    System.out.println(INSTANCE.hasWord("an giang"));
-    System.out.println(INSTANCE.hasWord("cao bằng"));
-    System.out.println(INSTANCE.hasWord("Cao Bằng"));
-    System.out.println(INSTANCE.hasWord("Hà Giang"));
-    System.out.println(INSTANCE.hasWord("hà giang"));
+    System.out.println(lexicon.hasWord("an giang"));
+    System.out.println(lexicon.hasWord("cao bằng"));
+    System.out.println(lexicon.hasWord("Cao Bằng"));
+    System.out.println(lexicon.hasWord("Hà Giang"));
+    System.out.println(lexicon.hasWord("hà giang"));
   }
 }
 
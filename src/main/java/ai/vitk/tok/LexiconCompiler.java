@@ -0,0 +1,120 @@
+package ai.vitk.tok;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles an XML lexicon and a number of word lists into the binary
+ * lexicon format read by {@link Lexicon#loadBinary(InputStream)}, so that
+ * the XML does not have to be unmarshalled each time a lexicon is needed.
+ * <p>
+ * The bundled <code>tok/lexicon.bin</code> is built from <code>tok/lexicon.xml</code>,
+ * <code>tok/provinces.txt</code> and <code>tok/districts.txt</code>:
+ * <pre>
+ * LexiconCompiler -x src/main/resources/tok/lexicon.xml \
+ *   src/main/resources/tok/provinces.txt src/main/resources/tok/districts.txt \
+ *   -o src/main/resources/tok/lexicon.bin
+ * </pre>
+ * With the <code>-m</code> option, the lexicon is written in the format
+ * of {@link MappedDictionary} instead; adding the <code>-d</code> option
+ * writes its minimal automaton, see {@link DawgDictionary}.
+ */
+public class LexiconCompiler {
+
+  private LexiconCompiler() {
+  }
+
+  /**
+   * Builds a lexicon from an XML lexicon and word lists.
+   *
+   * @param xml an XML lexicon or <code>null</code> to start from an empty lexicon.
+   * @param wordLists UTF-8 word lists, one word per line; each word is added
+   *                  in its original and its lowercase forms.
+   * @return a lexicon
+   */
+  public static Lexicon compile(InputStream xml, List<InputStream> wordLists) {
+    Lexicon lexicon = new Lexicon();
+    if (xml != null) {
+      lexicon = lexicon.load(xml);
+      if (lexicon == null)
+        throw new IllegalArgumentException("Cannot read the XML lexicon");
+    }
+    for (InputStream wordList : wordLists) {
+      lexicon.additionalLexicon(wordList);
+    }
+    return lexicon;
+  }
+
+  /**
+   * Builds a lexicon from an XML lexicon and word lists and writes it
+   * in the binary format.
+   *
+   * @param xml an XML lexicon or <code>null</code>.
+   * @param wordLists UTF-8 word lists.
+   * @param output the output stream of the binary lexicon.
+   * @return the compiled lexicon.
+   * @throws IOException
+   */
+  public static Lexicon compile(InputStream xml, List<InputStream> wordLists, OutputStream output) throws IOException {
+    Lexicon lexicon = compile(xml, wordLists);
+    lexicon.saveBinary(output);
+    return lexicon;
+  }
+
+  private static void usage() {
+    System.err.println("Usage: LexiconCompiler [-m [-d]] [-x lexicon.xml] [wordList.txt...] -o lexicon.bin");
+  }
+
+  public static void main(String[] args) throws IOException {
+    String xmlFile = null;
+    String outputFile = null;
+    boolean mapped = false;
+    boolean minimal = false;
+    List<String> wordListFiles = new ArrayList<>();
+    for (int j = 0; j < args.length; j++) {
+      if ((args[j].equals("-x") || args[j].equals("-o")) && j + 1 == args.length) {
+        usage();
+        return;
+      }
+      if (args[j].equals("-m")) {
+        mapped = true;
+      } else if (args[j].equals("-d")) {
+        minimal = true;
+      } else if (args[j].equals("-x")) {
+        xmlFile = args[++j];
+      } else if (args[j].equals("-o")) {
+        outputFile = args[++j];
+      } else {
+        wordListFiles.add(args[j]);
+      }
+    }
+    if (outputFile == null || (xmlFile == null && wordListFiles.isEmpty())) {
+      usage();
+      return;
+    }
+    List<InputStream> wordLists = new ArrayList<>();
+    try (InputStream xml = xmlFile != null ? new FileInputStream(xmlFile) : null;
+         OutputStream output = Files.newOutputStream(Paths.get(outputFile))) {
+      for (String wordListFile : wordListFiles) {
+        wordLists.add(new FileInputStream(wordListFile));
+      }
+      Lexicon lexicon = compile(xml, wordLists);
+      if (mapped && minimal)
+        DawgDictionary.of(lexicon).write(output);
+      else if (mapped)
+        MappedDictionary.write(lexicon, output);
+      else lexicon.saveBinary(output);
+      System.out.println(lexicon.statistics());
+    } finally {
+      for (InputStream wordList : wordLists) {
+        wordList.close();
+      }
+    }
+  }
+}
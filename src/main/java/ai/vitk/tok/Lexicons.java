@@ -0,0 +1,199 @@
+package ai.vitk.tok;
+
+import java.io.InputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A registry of the bundled lexicons. Each lexicon resource is loaded at most
+ * once per JVM and shared by all the dictionaries built upon it, so that the
+ * large compiled lexicon is held only once whatever word lists are combined
+ * with it. A resource is kept as a {@link SyllableDictionary}, the lexicon it
+ * is read into being released once its words are interned. The dictionaries
+ * handed out are read-only views.
+ */
+public final class Lexicons {
+  /** The compiled lexicon: lexicon.xml, provinces and districts. */
+  public static final String CORE = "/tok/lexicon.bin";
+  public static final String EXTRA = "/tok/extra.txt";
+  public static final String VCM = "/tok/vcm.txt";
+
+  private static final ConcurrentMap<String, SyllableDictionary> LEXICONS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<List<String>, Dictionary> DICTIONARIES = new ConcurrentHashMap<>();
+
+  private Lexicons() {
+  }
+
+  /**
+   * Gets the dictionary made of the union of some lexicon resources, which are
+   * either compiled lexicons (<code>.bin</code>) or word lists.
+   *
+   * @param resourcePaths resource paths of lexicons, e.g. {@link #CORE}, {@link #EXTRA}.
+   * @return a shared dictionary.
+   */
+  public static Dictionary get(String... resourcePaths) {
+    return DICTIONARIES.computeIfAbsent(Arrays.asList(resourcePaths.clone()), Union::new);
+  }
+
+  /**
+   * Loads some lexicon resources in the background, each one in its own task.
+   * The future completes with their dictionary once all of them are loaded, after
+   * which {@link #get(String...)} does not block; it may be used as a readiness signal.
+   *
+   * @param resourcePaths resource paths of lexicons.
+   * @return the future dictionary.
+   */
+  public static CompletableFuture<Dictionary> loadAsync(String... resourcePaths) {
+    String[] paths = resourcePaths.clone();
+    CompletableFuture<?>[] lexicons = Arrays.stream(paths)
+        .map(path -> CompletableFuture.supplyAsync(() -> lexicon(path)))
+        .toArray(CompletableFuture[]::new);
+    return CompletableFuture.allOf(lexicons).thenApply(v -> get(paths));
+  }
+
+  /**
+   * Tells whether some lexicon resources are loaded, without loading them.
+   *
+   * @param resourcePaths resource paths of lexicons.
+   * @return <code>true</code> if all of them are loaded.
+   */
+  public static boolean isLoaded(String... resourcePaths) {
+    for (String path : resourcePaths) {
+      if (!LEXICONS.containsKey(path))
+        return false;
+    }
+    return true;
+  }
+
+  static SyllableDictionary lexicon(String resourcePath) {
+    return LEXICONS.computeIfAbsent(resourcePath, Lexicons::load);
+  }
+
+  private static SyllableDictionary load(String resourcePath) {
+    InputStream inputStream = Lexicons.class.getResourceAsStream(resourcePath);
+    if (inputStream == null)
+      throw new IllegalArgumentException("No such lexicon: " + resourcePath);
+    Lexicon lexicon = resourcePath.endsWith(".bin")
+        ? new Lexicon().loadBinary(inputStream)
+        : new Lexicon().additionalLexicon(inputStream);
+    if (lexicon == null)
+      throw new IllegalArgumentException("Cannot load lexicon: " + resourcePath);
+    return SyllableDictionary.of(lexicon);
+  }
+
+  /**
+   * A word is in the union if it is in any of its lexicons.
+   */
+  static final class Union implements Dictionary, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final List<String> resourcePaths;
+    private final transient SyllableDictionary[] lexicons;
+
+    Union(List<String> resourcePaths) {
+      this.resourcePaths = resourcePaths;
+      this.lexicons = resourcePaths.stream().map(Lexicons::lexicon).toArray(SyllableDictionary[]::new);
+    }
+
+    @Override
+    public boolean hasWord(String word) {
+      for (SyllableDictionary lexicon : lexicons) {
+        if (lexicon.hasWord(word))
+          return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean hasLowerCaseWord(String word) {
+      for (SyllableDictionary lexicon : lexicons) {
+        if (lexicon.hasLowerCaseWord(word))
+          return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean isPrefix(String s) {
+      for (SyllableDictionary lexicon : lexicons) {
+        if (lexicon.isPrefix(s))
+          return true;
+      }
+      return false;
+    }
+
+    @Override
+    public Cursor cursor(String[] syllables) {
+      final Cursor[] cursors = new Cursor[lexicons.length];
+      for (int k = 0; k < lexicons.length; k++) {
+        cursors[k] = lexicons[k].cursor(syllables);
+      }
+      return new UnionCursor(cursors);
+    }
+
+    @Override
+    public DictionaryStatistics statistics() {
+      return DictionaryStatistics.sum(Arrays.stream(lexicons).map(SyllableDictionary::statistics).toArray(DictionaryStatistics[]::new));
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+      return get(resourcePaths.toArray(new String[resourcePaths.size()]));
+    }
+  }
+
+  /**
+   * Advances the cursors of several dictionaries together, those which cannot
+   * go further being left behind.
+   */
+  static final class UnionCursor implements Dictionary.Cursor {
+    private final Dictionary.Cursor[] cursors;
+    private final boolean[] alive;
+
+    UnionCursor(Dictionary.Cursor[] cursors) {
+      this.cursors = cursors;
+      this.alive = new boolean[cursors.length];
+    }
+
+    @Override
+    public void start(int position) {
+      for (int k = 0; k < cursors.length; k++) {
+        cursors[k].start(position);
+        alive[k] = true;
+      }
+    }
+
+    @Override
+    public boolean next() {
+      boolean result = false;
+      for (int k = 0; k < cursors.length; k++) {
+        if (alive[k]) {
+          alive[k] = cursors[k].next();
+          result |= alive[k];
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public boolean isWord() {
+      for (int k = 0; k < cursors.length; k++) {
+        if (alive[k] && cursors[k].isWord())
+          return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean canContinue() {
+      for (int k = 0; k < cursors.length; k++) {
+        if (alive[k] && cursors[k].canContinue())
+          return true;
+      }
+      return false;
+    }
+  }
+}
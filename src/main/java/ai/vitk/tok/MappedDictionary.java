@@ -0,0 +1,281 @@
+package ai.vitk.tok;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only dictionary backed by a memory-mapped file, so that the
+ * operating system shares one copy of the lexicon between all the processes
+ * of a host and nothing of it lives on the heap.
+ * <p>
+ * The file holds the prefix tree of a {@link Lexicon} as flat arrays, the states
+ * being numbered in breadth-first order from the root (state 0). All numbers
+ * are big-endian:
+ * <pre>
+ * magic     4 bytes    'V' 'L' 'X' 'M'
+ * version   int        {@link #VERSION}
+ * numStates int
+ * numEdges  int
+ * states    int[numStates + 1]  (first edge of the state &lt;&lt; 1) | 1 if a word ends there;
+ *                               the last entry is numEdges &lt;&lt; 1
+ * labels    char[numEdges]      edge labels, sorted for each state
+ * padding   to a multiple of 4 bytes
+ * targets   int[numEdges]       target states of the edges
+ * </pre>
+ * Such a file is written by {@link #write(Lexicon, OutputStream)} or by the
+ * {@link LexiconCompiler} with the <code>-m</code> option.
+ */
+public class MappedDictionary implements Dictionary, Serializable {
+  private static final long serialVersionUID = 1L;
+  static final byte[] MAGIC = {'V', 'L', 'X', 'M'};
+  static final int VERSION = 1;
+  private static final int HEADER = 16;
+
+  private final String fileName;
+  private final transient ByteBuffer buffer;
+  private final transient int numStates;
+  private final transient int labels;
+  private final transient int targets;
+
+  private MappedDictionary(String fileName, ByteBuffer buffer) throws IOException {
+    this.fileName = fileName;
+    this.buffer = buffer;
+    for (int j = 0; j < MAGIC.length; j++) {
+      if (buffer.get(j) != MAGIC[j])
+        throw new IOException("Not a mapped lexicon: " + fileName);
+    }
+    int version = buffer.getInt(4);
+    if (version != VERSION)
+      throw new IOException("Unsupported mapped lexicon version: " + version);
+    this.numStates = buffer.getInt(8);
+    int numEdges = buffer.getInt(12);
+    this.labels = HEADER + 4 * (numStates + 1);
+    this.targets = labels + align(2 * numEdges);
+    if (buffer.capacity() < targets + 4 * numEdges)
+      throw new IOException("Truncated mapped lexicon: " + fileName);
+  }
+
+  /**
+   * Maps a dictionary file into memory.
+   *
+   * @param fileName a file written by {@link #write(Lexicon, OutputStream)}.
+   * @return a dictionary
+   * @throws IOException
+   */
+  public static MappedDictionary open(String fileName) throws IOException {
+    Path path = Paths.get(fileName);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // the mapping stays valid once the channel is closed
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new MappedDictionary(fileName, buffer);
+    }
+  }
+
+  private static int align(int n) {
+    return (n + 3) & ~3;
+  }
+
+  private int state(int s) {
+    return buffer.getInt(HEADER + 4 * s);
+  }
+
+  /**
+   * Finds the target of the edge labelled by a character from a state.
+   * @return the target state or -1 if there is no such edge.
+   */
+  private int next(int s, char c) {
+    int lo = state(s) >>> 1;
+    int hi = (state(s + 1) >>> 1) - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      char label = buffer.getChar(labels + 2 * mid);
+      if (label < c)
+        lo = mid + 1;
+      else if (label > c)
+        hi = mid - 1;
+      else return buffer.getInt(targets + 4 * mid);
+    }
+    return -1;
+  }
+
+  private int walk(String s) {
+    int state = 0;
+    for (int j = 0; j < s.length() && state >= 0; j++) {
+      state = next(state, s.charAt(j));
+    }
+    return state;
+  }
+
+  @Override
+  public boolean hasWord(String word) {
+    int s = walk(word);
+    return s >= 0 && (state(s) & 1) != 0;
+  }
+
+  /**
+   * Verifies whether a string is the prefix of a word in the dictionary.
+   *
+   * @param s
+   * @return true/false
+   */
+  @Override
+  public boolean isPrefix(String s) {
+    return s.length() > 0 && walk(s) >= 0;
+  }
+
+  @Override
+  public Dictionary.Cursor cursor(String[] syllables) {
+    return new Cursor(syllables);
+  }
+
+  /**
+   * Gets the number of states of the underlying automaton.
+   *
+   * @return the number of states.
+   */
+  public int numStates() {
+    return numStates;
+  }
+
+  /**
+   * Computes the statistics of the automaton, whose estimated size is that of
+   * the mapped file.
+   */
+  @Override
+  public DictionaryStatistics statistics() {
+    return DictionaryStatistics.ofAutomaton(numStates, this::state, e -> buffer.getInt(targets + 4 * e),
+        e -> 1, e -> buffer.getChar(labels + 2 * e) == ' ' ? 1 : 0, 1, buffer.capacity());
+  }
+
+  /**
+   * Writes a lexicon in the format of mapped dictionaries.
+   *
+   * @param lexicon a lexicon
+   * @param outputStream an output stream
+   * @throws IOException
+   */
+  public static void write(Lexicon lexicon, OutputStream outputStream) throws IOException {
+    // number the nodes in breadth-first order, so that the edges of
+    // each state are contiguous
+    List<Lexicon.Node> nodes = new ArrayList<>();
+    nodes.add(lexicon.tree());
+    for (int i = 0; i < nodes.size(); i++) {
+      Lexicon.Node node = nodes.get(i);
+      for (int j = 0; j < node.size; j++) {
+        nodes.add(node.children[j]);
+      }
+    }
+    int[] states = new int[nodes.size() + 1];
+    char[] labels = new char[nodes.size() - 1];
+    int[] targets = new int[nodes.size() - 1];
+    int edge = 0;
+    for (int s = 0; s < nodes.size(); s++) {
+      Lexicon.Node node = nodes.get(s);
+      states[s] = edge << 1 | (node.isWord() ? 1 : 0);
+      for (int j = 0; j < node.size; j++) {
+        labels[edge] = node.labels[j];
+        targets[edge] = edge + 1;
+        edge++;
+      }
+    }
+    states[nodes.size()] = edge << 1;
+    write(states, labels, targets, outputStream);
+  }
+
+  /**
+   * Writes an automaton in the format of mapped dictionaries, state 0 being its 
+   * initial state.
+   *
+   * @param states the first edge of each state shifted left by one, or'ed with 1
+   *               if the state is final; with an extra entry for the end of the edges.
+   * @param labels the labels of the edges, sorted for each state.
+   * @param targets the targets of the edges.
+   * @param outputStream an output stream
+   * @throws IOException
+   */
+  static void write(int[] states, char[] labels, int[] targets, OutputStream outputStream) throws IOException {
+    int numEdges = labels.length;
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16));
+    output.write(MAGIC);
+    output.writeInt(VERSION);
+    output.writeInt(states.length - 1);
+    output.writeInt(numEdges);
+    for (int state : states) {
+      output.writeInt(state);
+    }
+    for (char label : labels) {
+      output.writeChar(label);
+    }
+    for (int j = 2 * numEdges; j < align(2 * numEdges); j++) {
+      output.writeByte(0);
+    }
+    for (int target : targets) {
+      output.writeInt(target);
+    }
+    output.flush();
+  }
+
+  private class Cursor implements Dictionary.Cursor {
+    private final String[] syllables;
+    private int position;
+    private boolean first;
+    private int state;
+
+    Cursor(String[] syllables) {
+      this.syllables = syllables;
+    }
+
+    @Override
+    public void start(int position) {
+      this.position = position;
+      this.state = 0;
+      this.first = true;
+    }
+
+    @Override
+    public boolean next() {
+      if (state < 0 || position >= syllables.length) {
+        state = -1;
+        return false;
+      }
+      if (!first)
+        state = MappedDictionary.this.next(state, ' ');
+      first = false;
+      String syllable = syllables[position++];
+      for (int j = 0; j < syllable.length() && state >= 0; j++) {
+        state = MappedDictionary.this.next(state, syllable.charAt(j));
+      }
+      return state >= 0;
+    }
+
+    @Override
+    public boolean isWord() {
+      return state >= 0 && (state(state) & 1) != 0;
+    }
+
+    @Override
+    public boolean canContinue() {
+      return state >= 0 && MappedDictionary.this.next(state, ' ') >= 0;
+    }
+  }
+
+  private Object readResolve() throws ObjectStreamException {
+    try {
+      return open(fileName);
+    } catch (IOException e) {
+      throw new InvalidObjectException("Cannot map " + fileName + ": " + e.getMessage());
+    }
+  }
+}
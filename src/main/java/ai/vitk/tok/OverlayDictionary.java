@@ -0,0 +1,172 @@
+package ai.vitk.tok;
+
+import java.io.Serializable;
+
+/**
+ * A dictionary made of a shared base dictionary and a small layer of words
+ * added to it or suppressed from it, e.g. the vocabulary of a customer. The base
+ * is only read, so that many overlays, each with its own tokenizer, share a
+ * single copy of the large lexicons:
+ * <pre>
+ *   OverlayDictionary overlay = new OverlayDictionary(DefaultDictionary.Data.INSTANCE);
+ *   overlay.addWord("vi tính");
+ *   overlay.suppressWord("học sinh");
+ *   Tokenizer tokenizer = new Tokenizer(overlay.freeze());
+ * </pre>
+ * An added word is always a word of the overlay, a suppressed word being hidden
+ * only from the base. Overlays are stacked by using an overlay as the base of
+ * another. Like a {@link Lexicon}, an overlay is built by one thread and then
+ * frozen before it is shared.
+ */
+public class OverlayDictionary implements Dictionary, Serializable {
+  private static final long serialVersionUID = 1L;
+  private final Dictionary base;
+  private final Lexicon additions = new Lexicon();
+  private final Lexicon suppressions = new Lexicon();
+
+  /**
+   * Creates an empty overlay.
+   *
+   * @param base the base dictionary, which is not modified.
+   */
+  public OverlayDictionary(Dictionary base) {
+    this.base = base;
+  }
+
+  /**
+   * Creates a frozen overlay.
+   *
+   * @param base the base dictionary.
+   * @param additions the words added to the base.
+   * @param suppressions the words of the base which are suppressed.
+   * @return a dictionary
+   */
+  public static OverlayDictionary of(Dictionary base, Iterable<String> additions, Iterable<String> suppressions) {
+    OverlayDictionary overlay = new OverlayDictionary(base);
+    for (String word : additions) {
+      overlay.addWord(word);
+    }
+    for (String word : suppressions) {
+      overlay.suppressWord(word);
+    }
+    return overlay.freeze();
+  }
+
+  /**
+   * Adds a word to the overlay.
+   *
+   * @param word a word
+   * @return <code>true</code> if the word is added, <code>false</code> if it was already added.
+   * @throws IllegalStateException if the overlay is frozen.
+   */
+  public boolean addWord(String word) {
+    return additions.addWord(word);
+  }
+
+  /**
+   * Suppresses a word of the base.
+   *
+   * @param word a word
+   * @return <code>true</code> if the word is suppressed, <code>false</code> if it was already suppressed.
+   * @throws IllegalStateException if the overlay is frozen.
+   */
+  public boolean suppressWord(String word) {
+    return suppressions.addWord(word);
+  }
+
+  /**
+   * Makes the overlay read-only.
+   *
+   * @return this overlay.
+   */
+  public OverlayDictionary freeze() {
+    additions.freeze();
+    suppressions.freeze();
+    return this;
+  }
+
+  /**
+   * @return the base dictionary.
+   */
+  public Dictionary base() {
+    return base;
+  }
+
+  @Override
+  public boolean hasWord(String word) {
+    return additions.hasWord(word) || (base.hasWord(word) && !suppressions.hasWord(word));
+  }
+
+  @Override
+  public boolean hasLowerCaseWord(String word) {
+    return additions.hasLowerCaseWord(word) || (base.hasLowerCaseWord(word) && !suppressions.hasLowerCaseWord(word));
+  }
+
+  /**
+   * Verifies whether a string is the prefix of a word of the base or of the
+   * additions, the suppressed words being ignored, which is safe.
+   */
+  @Override
+  public boolean isPrefix(String s) {
+    return additions.isPrefix(s) || base.isPrefix(s);
+  }
+
+  @Override
+  public Dictionary.Cursor cursor(String[] syllables) {
+    return new Cursor(base.cursor(syllables), additions.cursor(syllables), suppressions.cursor(syllables));
+  }
+
+  /**
+   * Adds up the statistics of the base, of the additions and of the suppressions,
+   * the size of the base being shared with the other overlays.
+   */
+  @Override
+  public DictionaryStatistics statistics() {
+    return DictionaryStatistics.sum(base.statistics(), additions.statistics(), suppressions.statistics());
+  }
+
+  /**
+   * Walks the base, the additions and the suppressions together.
+   */
+  private static final class Cursor implements Dictionary.Cursor {
+    private final Dictionary.Cursor base;
+    private final Dictionary.Cursor additions;
+    private final Dictionary.Cursor suppressions;
+    private boolean inBase;
+    private boolean inAdditions;
+    private boolean inSuppressions;
+
+    Cursor(Dictionary.Cursor base, Dictionary.Cursor additions, Dictionary.Cursor suppressions) {
+      this.base = base;
+      this.additions = additions;
+      this.suppressions = suppressions;
+    }
+
+    @Override
+    public void start(int position) {
+      base.start(position);
+      additions.start(position);
+      suppressions.start(position);
+      inBase = inAdditions = inSuppressions = true;
+    }
+
+    @Override
+    public boolean next() {
+      inBase = inBase && base.next();
+      inAdditions = inAdditions && additions.next();
+      inSuppressions = inSuppressions && suppressions.next();
+      return inBase || inAdditions;
+    }
+
+    @Override
+    public boolean isWord() {
+      return (inAdditions && additions.isWord())
+          || (inBase && base.isWord() && !(inSuppressions && suppressions.isWord()));
+    }
+
+    @Override
+    public boolean canContinue() {
+      return (inBase && base.canContinue()) || (inAdditions && additions.canContinue());
+    }
+  }
+}
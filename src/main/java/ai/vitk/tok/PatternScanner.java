@@ -0,0 +1,393 @@
+package ai.vitk.tok;
+
+import ai.vitk.util.PatternFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+
+/**
+ * Finds the matches of a list of patterns over a text, the patterns being tried
+ * in their order: the first pattern which matches a part of the text takes its
+ * leftmost match, then the parts on the left and on the right of the match are
+ * scanned in turn. Each part is trimmed and matched as if it was a text of its own,
+ * its ends being the ends of the input of the patterns.
+ * <p>
+ * The parts are scanned from left to right with a stack instead of a recursion.
+ * A part and the parts on the right of its matches end at the same character,
+ * which makes a lane: away from the beginning of a part, a pattern sees the same
+ * characters in all the parts of a lane, so that it runs once over the lane
+ * instead of once over each part. Only its first few positions in a part, where
+ * the pattern may look at the characters before the part, are tried one by one.
+ * <p>
+ * A pattern is tried only at the characters which may start its matches, and not
+ * at all in the parts which lack all its required characters, as told by a
+ * {@link PatternFilter}.
+ * <p>
+ * A scanner is shared by the threads, each thread keeping its matchers from
+ * a text to the next.
+ * <p>
+ * The search of a pattern in a part may read the characters a bounded number of
+ * times, a budget of steps for each character of the part, so that a pattern
+ * which backtracks over a long part cannot stall the scan: once the budget is
+ * spent, the pattern is taken as not matching the part, or the rest of its lane,
+ * and the event is counted.
+ */
+final class PatternScanner {
+  /** The number of steps of a search for each character of a part, by default. */
+  static final int BUDGET = 1000;
+  private final List<ai.vitk.type.Pattern> patterns;
+  /**
+   * The number of positions of a part which are tried one by one, for each pattern:
+   * those where the pattern may read the characters before the part.
+   */
+  private final int[] margins;
+  /** The positions where a pattern may start, and the parts where it may match. */
+  private final PatternFilter filter;
+  /** The number of steps of a search for each character of a part, 0 for no limit. */
+  private final int budget;
+  /** The number of searches of each pattern which spent their budget. */
+  private final LongAdder[] exhausted;
+  /**
+   * The scan of each thread, kept with its matchers from a text to the next. A scan
+   * does not refer to its scanner, which would keep the scanner and its scans alive
+   * as long as the threads.
+   */
+  private final ThreadLocal<Scan> scans = ThreadLocal.withInitial(this::newScan);
+
+  PatternScanner(List<ai.vitk.type.Pattern> patterns) {
+    this(patterns, BUDGET);
+  }
+
+  /**
+   * Creates a scanner.
+   *
+   * @param patterns the patterns, in the order they are tried.
+   * @param budget the number of steps of a search for each character of a part, 0 for no limit.
+   */
+  PatternScanner(List<ai.vitk.type.Pattern> patterns, int budget) {
+    if (budget < 0)
+      throw new IllegalArgumentException("Invalid budget: " + budget);
+    this.budget = budget;
+    this.exhausted = new LongAdder[patterns.size()];
+    for (int q = 0; q < exhausted.length; q++) {
+      exhausted[q] = new LongAdder();
+    }
+    this.patterns = new ArrayList<>(patterns);
+    this.filter = new PatternFilter(this.patterns);
+    this.margins = new int[patterns.size()];
+    for (int q = 0; q < margins.length; q++) {
+      // a pattern reading any character before it is tried all over the part
+      margins[q] = filter.behind(q) == Integer.MAX_VALUE ? Integer.MAX_VALUE : filter.behind(q) + 1;
+    }
+  }
+
+  /**
+   * Scans a part of a text.
+   *
+   * @param text a text
+   * @param begin the first character of the part.
+   * @param end the character after the last.
+   * @return the matches from left to right, a part matched by no pattern being
+   * a match without a name.
+   */
+  List<Match> scan(CharSequence text, int begin, int end) {
+    Scan scan = scans.get();
+    // a text scanned while this thread scans another one gets a scan of its own
+    if (scan.text != null)
+      scan = newScan();
+    return scan.run(text, begin, end);
+  }
+
+  private Scan newScan() {
+    return new Scan(patterns, margins, filter, budget, exhausted);
+  }
+
+  /**
+   * @return the number of steps of a search for each character of a part, 0 for no limit.
+   */
+  int budget() {
+    return budget;
+  }
+
+  /**
+   * Gets the number of searches of a pattern which were given up, their budget
+   * being spent.
+   *
+   * @param q the index of a pattern.
+   * @return a number of searches.
+   */
+  long exhausted(int q) {
+    return exhausted[q].sum();
+  }
+
+  /**
+   * Tells whether a character is a white space of the regular expressions, as
+   * matched by <code>\s</code>.
+   */
+  static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  /**
+   * A match of a pattern: its name and its characters in the text.
+   */
+  static final class Match {
+    final String name;
+    final int start;
+    final int end;
+
+    Match(String name, int start, int end) {
+      this.name = name;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /**
+   * A window on some characters of a text, seen by a matcher as its whole input.
+   */
+  private static final class Window implements CharSequence {
+    private CharSequence text;
+    private int offset;
+    private int length;
+    /** The number of characters which may still be read. */
+    private long steps = Long.MAX_VALUE;
+
+    Window set(int begin, int end) {
+      this.offset = begin;
+      this.length = end - begin;
+      return this;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= length)
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+      if (--steps < 0)
+        throw Exhausted.INSTANCE;
+      return text.charAt(offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return text.subSequence(offset + start, offset + end);
+    }
+
+    @Override
+    public String toString() {
+      return text.subSequence(offset, offset + length).toString();
+    }
+  }
+
+  /**
+   * Thrown through a matcher when its window runs out of steps, shared by the
+   * threads and so made without a stack trace.
+   */
+  private static final class Exhausted extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    static final Exhausted INSTANCE = new Exhausted();
+
+    private Exhausted() {
+      super("Budget exhausted", null, false, false);
+    }
+  }
+
+  /**
+   * The scan of a text, with the matchers of the patterns and the runs of the
+   * patterns over the lanes of the parts on the stack. The matchers and the arrays
+   * are reset from a text to the next, the windows of the matchers being moved
+   * over the text instead of copying its parts.
+   */
+  private static final class Scan {
+    private final List<ai.vitk.type.Pattern> patterns;
+    private final int[] margins;
+    private final PatternFilter filter;
+    private final int budget;
+    private final LongAdder[] exhausted;
+    /** The text being scanned, null between the texts. */
+    private CharSequence text;
+    private final Matcher[] matchers;
+    private final Window part = new Window();
+    private final Window lane = new Window();
+    /** The end of each lane, by depth. */
+    private int[] laneEnds = new int[8];
+    /**
+     * For each lane and each pattern, the position from which the pattern was run
+     * over the lane, the start and end of its first match from there, or -1, and
+     * the last required character of the pattern in the lane.
+     */
+    private int[][] runs = new int[8][];
+    /** The parts and the matches to come, by triples: begin, end, and lane or -1 - pattern. */
+    private int[] stack = new int[48];
+    private int size;
+    private int foundStart;
+    private int foundEnd;
+
+    Scan(List<ai.vitk.type.Pattern> patterns, int[] margins, PatternFilter filter, int budget, LongAdder[] exhausted) {
+      this.patterns = patterns;
+      this.margins = margins;
+      this.filter = filter;
+      this.budget = budget;
+      this.exhausted = exhausted;
+      this.matchers = new Matcher[patterns.size()];
+    }
+
+    List<Match> run(CharSequence text, int begin, int end) {
+      this.text = part.text = lane.text = text;
+      this.size = 0;
+      try {
+        return run(begin, end);
+      } finally {
+        this.text = part.text = lane.text = null;
+      }
+    }
+
+    private List<Match> run(int begin, int end) {
+      List<Match> matches = new ArrayList<>();
+      pushLane(begin, end, 0);
+      while (size > 0) {
+        size -= 3;
+        int b = stack[size];
+        int e = stack[size + 1];
+        int d = stack[size + 2];
+        if (d < 0) {
+          matches.add(new Match(patterns.get(-1 - d).getName(), b, e));
+          continue;
+        }
+        int q = 0;
+        while (q < patterns.size() && !find(q, b, e, d))
+          q++;
+        if (q == patterns.size()) {
+          matches.add(new Match(null, b, e));
+          continue;
+        }
+        int start = foundStart;
+        int stop = foundEnd;
+        // the right part goes on in the lane, the left part makes a new one
+        push(stop, e, d);
+        push(start, stop, -1 - q);
+        pushLane(b, start, d + 1);
+      }
+      return matches;
+    }
+
+    private void push(int begin, int end, int d) {
+      if (d >= 0) {
+        while (begin < end && text.charAt(begin) <= ' ')
+          begin++;
+        if (begin == end)
+          return;
+      }
+      if (size == stack.length)
+        stack = Arrays.copyOf(stack, 2 * size);
+      stack[size++] = begin;
+      stack[size++] = end;
+      stack[size++] = d;
+    }
+
+    private void pushLane(int begin, int end, int d) {
+      while (end > begin && text.charAt(end - 1) <= ' ')
+        end--;
+      if (begin == end)
+        return;
+      if (d == laneEnds.length) {
+        laneEnds = Arrays.copyOf(laneEnds, 2 * d);
+        runs = Arrays.copyOf(runs, 2 * d);
+      }
+      // the lanes deeper than the parts on the stack are over
+      laneEnds[d] = end;
+      if (runs[d] == null)
+        runs[d] = new int[4 * patterns.size()];
+      for (int q = 0; q < patterns.size(); q++) {
+        runs[d][4 * q] = Integer.MAX_VALUE;
+        runs[d][4 * q + 3] = Integer.MIN_VALUE;
+      }
+      push(begin, end, d);
+    }
+
+    private Matcher matcher(int q) {
+      if (matchers[q] == null) {
+        matchers[q] = patterns.get(q).getPattern().matcher(part);
+        matchers[q].useTransparentBounds(true).useAnchoringBounds(false);
+      }
+      return matchers[q];
+    }
+
+    /**
+     * Finds the leftmost match of a pattern in a part, as if the part was a text
+     * of its own.
+     *
+     * @return <code>true</code> if the pattern matches, its match being kept.
+     */
+    private boolean find(int q, int begin, int end, int d) {
+      int[] run = runs[d];
+      if (!filter.isFree(q)) {
+        // the parts of a lane go from left to right, the last required character
+        // is looked for once
+        if (run[4 * q + 3] == Integer.MIN_VALUE) {
+          int j = laneEnds[d] - 1;
+          while (j >= begin && !filter.isRequired(q, text.charAt(j)))
+            j--;
+          run[4 * q + 3] = j;
+        }
+        if (run[4 * q + 3] < begin)
+          return false;
+      }
+      Matcher matcher = matcher(q);
+      int limit = margins[q] >= end - begin ? end : begin + margins[q];
+      // a word boundary also reads the combining marks before a position
+      while (limit < end && Character.getType(text.charAt(limit - 1)) == Character.NON_SPACING_MARK)
+        limit++;
+      // the characters which the search may read, the margin and the run over the lane together
+      part.steps = lane.steps = budget == 0 ? Long.MAX_VALUE : (long) budget * (end - begin);
+      try {
+        matcher.reset(part.set(begin, end));
+        for (int i = begin; i < limit; i++) {
+          if (!filter.mayStart(q, text.charAt(i)))
+            continue;
+          matcher.region(i - begin, end - begin);
+          if (matcher.lookingAt()) {
+            foundStart = i;
+            foundEnd = begin + matcher.end();
+            return true;
+          }
+        }
+        if (limit == end)
+          return false;
+        if (run[4 * q] > limit || (run[4 * q + 1] >= 0 && run[4 * q + 1] < limit)) {
+          matcher.reset(lane.set(0, laneEnds[d]));
+          run[4 * q] = limit;
+          run[4 * q + 1] = run[4 * q + 2] = -1;
+          lane.steps = part.steps;
+          for (int i = limit; i <= end; i++) {
+            if (i < end ? !filter.mayStart(q, text.charAt(i)) : !filter.mayBeEmpty(q))
+              continue;
+            matcher.region(i, end);
+            if (matcher.lookingAt()) {
+              run[4 * q + 1] = i;
+              run[4 * q + 2] = matcher.end();
+              break;
+            }
+          }
+        }
+      } catch (Exhausted e) {
+        // the run over the lane, if any, is left without a match
+        exhausted[q].increment();
+        return false;
+      }
+      if (run[4 * q + 1] < 0)
+        return false;
+      foundStart = run[4 * q + 1];
+      foundEnd = run[4 * q + 2];
+      return true;
+    }
+  }
+}
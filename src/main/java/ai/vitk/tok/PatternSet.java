@@ -0,0 +1,385 @@
+package ai.vitk.tok;
+
+import ai.vitk.tok.PatternScanner.Match;
+import ai.vitk.util.TokenShape;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The patterns which a {@link RegExpTokenizer} matches over the texts before
+ * segmenting their phrases, in the order they are tried: from the highest
+ * priority to the lowest, the patterns of a same priority in the order they
+ * are defined. A set is compiled once and may be shared by any number of
+ * tokenizers; a deployment which needs only some of the patterns runs only those,
+ * by loading its own definition or by pruning a set.
+ * <p>
+ * The default set is {@link #COMMON}, made of the common patterns of
+ * {@link TokenShape}; a set of other patterns is defined by an XML document:
+ * <pre>
+ * &lt;patterns&gt;
+ *     &lt;pattern&gt;
+ *         &lt;name&gt;NUMBER&lt;/name&gt;
+ *         &lt;regexp&gt;
+ *             ([+-]?([0-9]*)?[0-9]+([.,]\d+)*)\b
+ *         &lt;/regexp&gt;
+ *         &lt;priority&gt;0&lt;/priority&gt;
+ *     &lt;/pattern&gt;
+ * &lt;/patterns&gt;
+ * </pre>
+ * The lines of a regular expression are trimmed and joined. The parts matched
+ * by PHRASE are segmented with the dictionary, the parts matched by no pattern
+ * are left out of the tokens.
+ * <p>
+ * The plain texts are lexed without running the patterns as long as the set is
+ * made of common patterns only, among which NAME, CAPITAL, NUMBER, PUNCT and
+ * PHRASE.
+ * <p>
+ * The search of a pattern in a part of a text is given a budget of steps for each
+ * character of the part; a pattern which backtracks too long is taken as not
+ * matching there, and counted by {@link #exhausted()}.
+ * <p>
+ * The tokens of the {@link TokenSpans} filled with a set are typed by the codes
+ * of the set: {@link TokenSpans#WORD} for the words of the phrases, then a code
+ * for each name of pattern, in the order of the patterns; a set has at most
+ * {@link #MAX_TYPES} names.
+ */
+public final class PatternSet implements Serializable {
+  private static final long serialVersionUID = 1L;
+  /** The common patterns of {@link TokenShape}, in their order. */
+  private static final List<ai.vitk.type.Pattern> COMMON_PATTERNS = sort(TokenShape.COMMON_PATTERNS);
+  /** The patterns which the plain texts are lexed into. */
+  private static final List<String> LEXED = Arrays.asList("NAME", "CAPITAL", "NUMBER", "PUNCT", "PHRASE");
+  /** The number of names of patterns of a set, at most. */
+  public static final int MAX_TYPES = Byte.MAX_VALUE;
+  /** The common patterns, used by default. */
+  public static final PatternSet COMMON = new PatternSet(COMMON_PATTERNS);
+
+  private final String[] names;
+  private final java.util.regex.Pattern[] regexps;
+  private final int[] priorities;
+  /** The number of steps of a search for each character of a part, 0 for no limit. */
+  private final int budget;
+  private final transient List<ai.vitk.type.Pattern> patterns;
+  private final transient PatternScanner scanner;
+  /** Whether the plain texts may be lexed. */
+  private final transient boolean plain;
+  /** The names of the types of the tokens by code, and their codes. */
+  private final transient List<String> types = new ArrayList<>();
+  private final transient Map<String, Byte> codes = new HashMap<>();
+
+  private PatternSet(List<ai.vitk.type.Pattern> patterns) {
+    this(patterns, PatternScanner.BUDGET);
+  }
+
+  private PatternSet(List<ai.vitk.type.Pattern> patterns, int budget) {
+    this.budget = budget;
+    this.patterns = Collections.unmodifiableList(patterns);
+    int n = patterns.size();
+    this.names = new String[n];
+    this.regexps = new java.util.regex.Pattern[n];
+    this.priorities = new int[n];
+    for (int q = 0; q < n; q++) {
+      names[q] = patterns.get(q).getName();
+      regexps[q] = patterns.get(q).getPattern();
+      priorities[q] = patterns.get(q).getPriority();
+    }
+    types.add("WORD");
+    codes.put("WORD", TokenSpans.WORD);
+    for (String name : names) {
+      if (!codes.containsKey(name)) {
+        if (types.size() > MAX_TYPES)
+          throw new IllegalArgumentException("More than " + MAX_TYPES + " names of patterns");
+        codes.put(name, (byte) types.size());
+        types.add(name);
+      }
+    }
+    this.scanner = new PatternScanner(patterns, budget);
+    this.plain = isCommon(patterns) && Arrays.asList(names).containsAll(LEXED);
+  }
+
+  /**
+   * Gets the set of some patterns.
+   *
+   * @param patterns some patterns, in any order.
+   * @return a set, the common one if the patterns are the common patterns.
+   * @throws IllegalArgumentException if the patterns have more than {@link #MAX_TYPES} names.
+   */
+  public static PatternSet of(List<ai.vitk.type.Pattern> patterns) {
+    return of(patterns, PatternScanner.BUDGET);
+  }
+
+  private static PatternSet of(List<ai.vitk.type.Pattern> patterns, int budget) {
+    List<ai.vitk.type.Pattern> sorted = sort(patterns);
+    if (budget == PatternScanner.BUDGET && same(sorted, COMMON_PATTERNS))
+      return COMMON;
+    return new PatternSet(sorted, budget);
+  }
+
+  /**
+   * Reads a set from an XML file.
+   *
+   * @param fileName an XML file defining patterns.
+   * @return a set, or <code>null</code> if the file cannot be read.
+   */
+  public static PatternSet load(String fileName) {
+    try (InputStream inputStream = new FileInputStream(fileName)) {
+      return load(inputStream);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return null;
+  }
+
+  /**
+   * Reads a set from an XML stream, each <code>pattern</code> element having
+   * a <code>name</code>, a <code>regexp</code> and a <code>priority</code>.
+   *
+   * @param inputStream an XML stream.
+   * @return a set, or <code>null</code> if the stream is not a valid definition.
+   */
+  public static PatternSet load(InputStream inputStream) {
+    try {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+      XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+      List<ai.vitk.type.Pattern> patterns = new ArrayList<>();
+      StringBuilder text = new StringBuilder();
+      String name = null;
+      String regexp = null;
+      String priority = null;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          if (reader.getLocalName().equals("pattern"))
+            name = regexp = priority = null;
+          text.setLength(0);
+        } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+          text.append(reader.getText());
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          switch (reader.getLocalName()) {
+            case "name":
+              name = text.toString().trim();
+              break;
+            case "regexp":
+              regexp = join(text);
+              break;
+            case "priority":
+              priority = text.toString().trim();
+              break;
+            case "pattern":
+              if (name == null || name.isEmpty() || regexp == null || regexp.isEmpty() || priority == null)
+                throw new XMLStreamException("Incomplete pattern " + name, reader.getLocation());
+              try {
+                patterns.add(new ai.vitk.type.Pattern(name, java.util.regex.Pattern.compile(regexp), Integer.parseInt(priority)));
+              } catch (NumberFormatException | PatternSyntaxException e) {
+                throw new XMLStreamException("Invalid pattern " + name + ": " + e.getMessage(), reader.getLocation());
+              }
+              break;
+            default:
+              break;
+          }
+        }
+      }
+      reader.close();
+      if (patterns.isEmpty())
+        throw new XMLStreamException("No pattern");
+      return of(patterns);
+    } catch (XMLStreamException | IllegalArgumentException e) {
+      e.printStackTrace();
+    }
+    return null;
+  }
+
+  /**
+   * Gets the set of the patterns of this set which have some names.
+   *
+   * @param names names of patterns.
+   * @return a set.
+   */
+  public PatternSet retain(String... names) {
+    Set<String> kept = check(names);
+    List<ai.vitk.type.Pattern> retained = new ArrayList<>();
+    for (ai.vitk.type.Pattern pattern : patterns) {
+      if (kept.contains(pattern.getName()))
+        retained.add(pattern);
+    }
+    return of(retained, budget);
+  }
+
+  /**
+   * Gets the set of the patterns of this set which have not some names.
+   *
+   * @param names names of patterns.
+   * @return a set.
+   */
+  public PatternSet remove(String... names) {
+    Set<String> removed = check(names);
+    List<ai.vitk.type.Pattern> retained = new ArrayList<>();
+    for (ai.vitk.type.Pattern pattern : patterns) {
+      if (!removed.contains(pattern.getName()))
+        retained.add(pattern);
+    }
+    return of(retained, budget);
+  }
+
+  /**
+   * Gets the set of the patterns of this set whose searches have another budget.
+   *
+   * @param budget the number of steps of a search for each character of a part,
+   *               e.g. the characters read by the regular expression, or 0 for no limit.
+   * @return a set.
+   */
+  public PatternSet withBudget(int budget) {
+    if (budget < 0)
+      throw new IllegalArgumentException("Invalid budget: " + budget);
+    return budget == this.budget ? this : of(patterns, budget);
+  }
+
+  /**
+   * @return the number of steps of a search for each character of a part, 0 for no limit.
+   */
+  public int budget() {
+    return budget;
+  }
+
+  /**
+   * Gets the number of searches of each pattern which were given up, their budget
+   * being spent, since the set was made.
+   *
+   * @return the numbers of searches by pattern name, for the patterns given up at least once.
+   */
+  public Map<String, Long> exhausted() {
+    Map<String, Long> exhausted = new LinkedHashMap<>();
+    for (int q = 0; q < names.length; q++) {
+      long n = scanner.exhausted(q);
+      if (n > 0)
+        exhausted.merge(names[q], n, Long::sum);
+    }
+    return exhausted;
+  }
+
+  /**
+   * Gets the code of a type of the tokens.
+   *
+   * @param name the name of a pattern, or WORD.
+   * @return a code, -1 if the set has no such pattern.
+   */
+  public byte typeCode(String name) {
+    Byte code = codes.get(name);
+    return code == null ? -1 : code;
+  }
+
+  /**
+   * Gets the name of a type of the tokens.
+   *
+   * @param code the code of a type.
+   * @return a name, WORD or the name of a pattern.
+   */
+  public String typeName(byte code) {
+    return types.get(code);
+  }
+
+  /**
+   * @return the patterns, in the order they are tried.
+   */
+  public List<ai.vitk.type.Pattern> patterns() {
+    return patterns;
+  }
+
+  /**
+   * Finds the matches of the patterns in a part of a text, the plain parts being
+   * lexed without the patterns if the set allows it.
+   */
+  List<Match> scan(CharSequence text, int begin, int end) {
+    if (plain) {
+      List<Match> matches = PlainTextLexer.scan(text, begin, end);
+      if (matches != null)
+        return matches;
+    }
+    return scanner.scan(text, begin, end);
+  }
+
+  private Set<String> check(String... names) {
+    Set<String> set = new HashSet<>(Arrays.asList(names));
+    for (String name : set) {
+      if (!Arrays.asList(this.names).contains(name))
+        throw new IllegalArgumentException("No such pattern: " + name);
+    }
+    return set;
+  }
+
+  private static List<ai.vitk.type.Pattern> sort(List<ai.vitk.type.Pattern> patterns) {
+    List<ai.vitk.type.Pattern> sorted = new ArrayList<>(patterns);
+    Collections.sort(sorted, Comparator.reverseOrder());
+    return sorted;
+  }
+
+  /**
+   * Tells whether some patterns are common patterns in the same order, which the
+   * plain texts do not match but for the patterns they are lexed into.
+   */
+  private static boolean isCommon(List<ai.vitk.type.Pattern> patterns) {
+    int k = 0;
+    for (ai.vitk.type.Pattern pattern : patterns) {
+      while (k < COMMON_PATTERNS.size() && !same(pattern, COMMON_PATTERNS.get(k)))
+        k++;
+      if (k++ == COMMON_PATTERNS.size())
+        return false;
+    }
+    return true;
+  }
+
+  private static boolean same(List<ai.vitk.type.Pattern> u, List<ai.vitk.type.Pattern> v) {
+    if (u.size() != v.size())
+      return false;
+    for (int q = 0; q < u.size(); q++) {
+      if (!same(u.get(q), v.get(q)))
+        return false;
+    }
+    return true;
+  }
+
+  private static boolean same(ai.vitk.type.Pattern p, ai.vitk.type.Pattern r) {
+    return p.equals(r) && p.getPattern().pattern().equals(r.getPattern().pattern())
+        && p.getPattern().flags() == r.getPattern().flags();
+  }
+
+  /**
+   * Joins the trimmed lines of a regular expression.
+   */
+  private static String join(CharSequence text) {
+    StringBuilder regexp = new StringBuilder();
+    for (String line : text.toString().split("\\R")) {
+      regexp.append(line.trim());
+    }
+    return regexp.toString();
+  }
+
+  private Object readResolve() throws ObjectStreamException {
+    List<ai.vitk.type.Pattern> patterns = new ArrayList<>(names.length);
+    for (int q = 0; q < names.length; q++) {
+      patterns.add(new ai.vitk.type.Pattern(names[q], regexps[q], priorities[q]));
+    }
+    return of(patterns, budget);
+  }
+}
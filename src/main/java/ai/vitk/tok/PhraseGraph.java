@@ -1,20 +1,20 @@
 package ai.vitk.tok;
 
 
+import ai.vitk.tok.SyllableCache.Syllable;
 import ai.vitk.type.ImmutablePair;
 import ai.vitk.type.Pair;
+import ai.vitk.type.Token;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Created by phuonglh on 2/17/17.
@@ -24,6 +24,8 @@ public class PhraseGraph implements Serializable {
   static boolean verbose = false;
   private static Logger logger = Logger.getLogger(PhraseGraph.class.getName());
   private static TextNormalizer NORMALIZER = new TextNormalizer();
+  /** The syllables of all the phrases, a few thousands being met most of the time. */
+  private static final SyllableCache SYLLABLES = new SyllableCache(1 << 14);
   
   private final Dictionary dictionary;
   
@@ -34,15 +36,27 @@ public class PhraseGraph implements Serializable {
   public PhraseGraph(final Dictionary dictionary) {
     this.dictionary = dictionary;
   }
+
+  /**
+   * @return the dictionary of the words of the phrases.
+   */
+  Dictionary dictionary() {
+    return dictionary;
+  }
   
   public static final class GraphPaths {
       
     private final Syllable[] syllables;
     private final List<LinkedList<Integer>> paths;
+    /** The original text of the phrase, and the offset of the phrase there. */
+    private final String text;
+    private final int from;
       
-    protected GraphPaths(final Syllable[] syllables, final List<LinkedList<Integer>> paths) {
+    protected GraphPaths(final Syllable[] syllables, final List<LinkedList<Integer>> paths, final String text, final int from) {
       this.syllables = syllables;
       this.paths = paths;
+      this.text = text;
+      this.from = from;
     }
 
     public final boolean isEmpty() {
@@ -83,6 +97,81 @@ public class PhraseGraph implements Serializable {
       return result;
     }
 
+    /**
+     * Gets the tokens of the words specified by a given path, with their offsets in
+     * the original text. The word of a token is taken from the text when it is
+     * first asked, unless its syllables are apart by other white spaces than a
+     * single space.
+     * @param pathIdx
+     * @return a list of tokens.
+     */
+    public final List<Token> tokens(final int pathIdx) {
+      final List<Integer> path = this.paths.get(pathIdx);
+      final int m = path.size();
+      final List<Token> result = new ArrayList<>(Math.max(m - 1, 0));
+      if (m <= 1)
+        return result;
+      final int[] starts = starts();
+      final Iterator<Integer> vertices = path.iterator();
+      int u = vertices.next();
+      while (vertices.hasNext()) {
+        final int v = vertices.next();
+        final int begin = starts[u];
+        final int end = starts[v - 1] + syllables[v - 1].original.length();
+        boolean spaced = true;
+        for (int k = u + 1; k < v && spaced; k++) {
+          spaced = starts[k] == starts[k - 1] + syllables[k - 1].original.length() + 1 && text.charAt(starts[k] - 1) == ' ';
+        }
+        if (spaced) {
+          result.add(new Token("0", text, begin, end));
+        } else {
+          final StringBuilder word = new StringBuilder(syllables[u].original);
+          for (int k = u + 1; k < v; k++) {
+            word.append(' ');
+            word.append(syllables[k].original);
+          }
+          result.add(new Token("0", word.toString()).setOffsets(begin, end));
+        }
+        u = v;
+      }
+      return result;
+    }
+
+    /**
+     * Adds the words specified by a given path to some spans, as words.
+     * @param pathIdx
+     * @param spans the spans of the text
+     */
+    final void spans(final int pathIdx, final TokenSpans spans) {
+      final List<Integer> path = this.paths.get(pathIdx);
+      if (path.size() <= 1)
+        return;
+      final int[] starts = starts();
+      final Iterator<Integer> vertices = path.iterator();
+      int u = vertices.next();
+      while (vertices.hasNext()) {
+        final int v = vertices.next();
+        // the white spaces between the syllables are single spaces in the word
+        spans.add(starts[u], starts[v - 1] + syllables[v - 1].original.length(), TokenSpans.WORD, starts[u]);
+        u = v;
+      }
+    }
+
+    /**
+     * Finds the offset of each syllable in the text, the phrase being trimmed.
+     */
+    private int[] starts() {
+      final int[] starts = new int[syllables.length];
+      int i = from;
+      for (int k = 0; k < syllables.length; k++) {
+        while (k == 0 ? text.charAt(i) <= ' ' : PatternScanner.isSpace(text.charAt(i)))
+          i++;
+        starts[k] = i;
+        i += syllables[k].original.length();
+      }
+      return starts;
+    }
+
     /**
      * Gets a sub-sequence of syllables from a segment marking 
      * the beginning and the end positions.
@@ -126,28 +215,30 @@ public class PhraseGraph implements Serializable {
    * For each vertex v, we store a list of vertices u where (u, v) is an edge
    * of the graph. This is used to recursively search for all paths on the graph.  
    */
-  private GraphPaths makeShortestPaths(final String phrase) {
+  private GraphPaths makeShortestPaths(final TextNormalizer.Text text, final int begin, final int end) {
       final Map<Integer, LinkedList<Integer>> edges = new HashMap<>();
-      final Syllable[] syllables = Arrays.stream(phrase.split("\\s+"))
-        .map(Syllable::new)
-        .toArray(Syllable[]::new);
+      final Syllable[] syllables = syllables(text, begin, end);
       if (verbose && syllables.length > 128) {
         logger.log(Level.WARNING, "Phrase too long (>= 128 syllables), tokenization may be slow...");
-        logger.log(Level.WARNING, phrase);
+        logger.log(Level.WARNING, text.original(begin, end));
       }
       for (int j = 0; j <= syllables.length; j++) {
         edges.put(j, new LinkedList<>());
       }
+      final String[] normalised = new String[syllables.length];
+      for (int i = 0; i < syllables.length; i++) {
+        normalised[i] = syllables[i].normalised;
+      }
+      // walk the dictionary from each syllable, as long as some word may continue
+      final Dictionary.Cursor cursor = dictionary.cursor(normalised);
       for (int i = 0; i < syllables.length; i++) {
-        String token = syllables[i].normalised;
-        int j = i;
-        while (j < syllables.length) {
-          if (dictionary.hasWord(token)) {
+        cursor.start(i);
+        for (int j = i; j < syllables.length && cursor.next(); j++) {
+          if (cursor.isWord()) {
             edges.get(j+1).add(i);
           }
-          j++;
-          if (j < syllables.length) {
-            token = token + ' ' + syllables[j].normalised;
+          if (!cursor.canContinue()) {
+            break;
           }
         }
       }
@@ -158,7 +249,41 @@ public class PhraseGraph implements Serializable {
           edges.get(i).add(i-1);
         }
       }
-      return new GraphPaths(syllables, new Dijkstra(edges).shortestPaths());
+      return new GraphPaths(syllables, new Dijkstra(edges).shortestPaths(), text.original(), text.offset(begin));
+  }
+
+  /**
+   * Splits a trimmed phrase into its syllables, separated by white spaces, the
+   * syllables being taken from the cache.
+   */
+  private static Syllable[] syllables(final TextNormalizer.Text text, final int begin, int end) {
+    final String composed = text.composed();
+    final List<Syllable> syllables = new ArrayList<>();
+    int i = begin;
+    while (i < end && composed.charAt(i) <= ' ')
+      i++;
+    while (end > i && composed.charAt(end - 1) <= ' ')
+      end--;
+    while (i < end) {
+      int j = i;
+      while (j < end && !PatternScanner.isSpace(composed.charAt(j))) {
+        j++;
+      }
+      syllables.add(SYLLABLES.get(text, i, j));
+      i = j;
+      while (i < end && PatternScanner.isSpace(composed.charAt(i))) {
+        i++;
+      }
+    }
+    return syllables.toArray(new Syllable[syllables.size()]);
+  }
+
+  /**
+   * Gets the cache of the syllables of the phrases, shared by all the graphs.
+   * @return the cache
+   */
+  public static SyllableCache syllableCache() {
+    return SYLLABLES;
   }
 
   /**
@@ -167,7 +292,19 @@ public class PhraseGraph implements Serializable {
    * @return a list of paths, each path is a linked list of vertices.
    */
   public GraphPaths shortestPaths(final String text) {
-    final GraphPaths paths = this.makeShortestPaths(text);
+    final TextNormalizer.Text normalized = NORMALIZER.text(text);
+    return shortestPaths(normalized, 0, normalized.length());
+  }
+
+  /**
+   * Finds all shortest paths of the graph of a phrase of a normalized text.
+   * @param text a normalized text
+   * @param begin the first character of the phrase, which is trimmed
+   * @param end the character after the last character of the phrase
+   * @return a list of paths, each path is a linked list of vertices.
+   */
+  GraphPaths shortestPaths(final TextNormalizer.Text text, final int begin, final int end) {
+    final GraphPaths paths = this.makeShortestPaths(text, begin, end);
     if (verbose) {
       if (paths.paths.size() > 16) {
         final StringBuilder phrase = new StringBuilder();
@@ -186,64 +323,4 @@ public class PhraseGraph implements Serializable {
     }
     return paths;
   }
-
-  static final class TextNormalizer implements Serializable {
-    private final Map<String, String> vowels = new HashMap<String, String>();
-    private final Pattern pattern = Pattern.compile("[hklmst][yỳýỷỹỵ]");
-    private final Map<Character, Character> ymap = new HashMap<Character, Character>();
-
-    public TextNormalizer() {
-      vowels.put("òa", "oà");
-      vowels.put("óa", "oá");
-      vowels.put("ỏa", "oả");
-      vowels.put("õa", "oã");
-      vowels.put("ọa", "oạ");
-      vowels.put("òe", "oè");
-      vowels.put("óe", "oé");
-      vowels.put("ỏe", "oẻ");
-      vowels.put("õe", "oẽ");
-      vowels.put("ọe", "oẹ");
-      vowels.put("ùy", "uỳ");
-      vowels.put("úy", "uý");
-      vowels.put("ủy", "uỷ");
-      vowels.put("ũy", "uỹ");
-      vowels.put("ụy", "uỵ");
-      // initialize the y map
-      ymap.put('y', 'y');
-      ymap.put('ỳ', 'ì');
-      ymap.put('ý', 'í');
-      ymap.put('ỷ', 'ỉ');
-      ymap.put('ỹ', 'ĩ');
-      ymap.put('ỵ', 'ị');
-    }
-
-    public String normalize(String phrase) {
-      // normalize all the vowels of the phrase
-      for (final String u : vowels.keySet()) {
-        final String v = vowels.get(u);
-        phrase = phrase.replace(u, v);
-      }
-      // normalize the i/y by converting 'y' to 'i'  
-      // if 'y' goes after consonants "h, k, l, m, s, t".
-      StringBuilder sb = new StringBuilder(phrase);
-      final Matcher matcher = pattern.matcher(phrase);
-      while (matcher.find()) {
-        final int idx = matcher.start() + 1;
-        sb = sb.replace(idx, matcher.end(), String.valueOf(ymap.get(sb.charAt(idx))));
-      }
-      return sb.toString();
-    }
-
-  }
-
-  private static class Syllable {
-    private final String original;
-    private final String normalised;
-
-    Syllable(final String original) {
-      this.original = original;
-      this.normalised = NORMALIZER.normalize(original);
-    }
-  }
-  
 }
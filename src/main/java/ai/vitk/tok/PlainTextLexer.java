@@ -0,0 +1,174 @@
+package ai.vitk.tok;
+
+import ai.vitk.tok.PatternScanner.Match;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lexes the plain texts, made of lowercase phrases, capitalized words, integers
+ * and simple punctuation, into the matches which the common patterns of the
+ * {@link RegExpTokenizer} find there, without running the patterns.
+ * <p>
+ * In such a text, only NAME, CAPITAL, NUMBER, PUNCT and PHRASE may match, in this
+ * order: the names are the runs of capitalized words of two letters or more apart
+ * by one space, the other capitalized words are left to CAPITAL, the integers to
+ * NUMBER, the runs of punctuation to PUNCT, and the lowercase phrases between them
+ * to PHRASE. The lexer gives up, leaving the text to the patterns, at the first
+ * character which may start or join another match: an uppercase letter after a
+ * letter or a digit, a letter after a digit, a dot before a letter, a sign or a
+ * separator before a digit, and the characters which are not plain.
+ */
+final class PlainTextLexer {
+  /** The punctuation of the PUNCT pattern which starts no other pattern. */
+  private static final String PUNCTUATION = "!\"#&'()*+,-.:;<=>?[\\]^`{|}~“”’‘…–";
+
+  private PlainTextLexer() {
+  }
+
+  /**
+   * Lexes a part of a text.
+   *
+   * @param text a text
+   * @param begin the first character of the part.
+   * @param end the character after the last.
+   * @return the matches from left to right, or <code>null</code> if the part is not plain.
+   */
+  static List<Match> scan(CharSequence text, int begin, int end) {
+    List<Match> matches = new ArrayList<>();
+    // the first and the last letters of the current phrase
+    int phrase = -1;
+    int phraseEnd = -1;
+    int i = begin;
+    while (i < end) {
+      char c = text.charAt(i);
+      int type = Character.getType(c);
+      if (type == Character.LOWERCASE_LETTER) {
+        if (phrase < 0)
+          phrase = i;
+        phraseEnd = ++i;
+        continue;
+      }
+      if (PatternScanner.isSpace(c)) {
+        i++;
+        continue;
+      }
+      if (phrase >= 0) {
+        if (!isPhrase(text, phrase, phraseEnd))
+          return null;
+        matches.add(new Match("PHRASE", phrase, phraseEnd));
+        phrase = -1;
+      }
+      // a word or a number must not follow a letter or a digit
+      boolean joined = i > begin && isWord(text.charAt(i - 1));
+      int stop;
+      if (type == Character.UPPERCASE_LETTER) {
+        if (joined)
+          return null;
+        stop = capitalized(text, i, end);
+        if (stop < 0)
+          return null;
+        String name = "CAPITAL";
+        // a name goes on with the capitalized words of two letters or more
+        while (stop - i > 1 && stop + 1 < end && PatternScanner.isSpace(text.charAt(stop))
+            && Character.getType(text.charAt(stop + 1)) == Character.UPPERCASE_LETTER) {
+          int next = capitalized(text, stop + 1, end);
+          if (next < 0)
+            return null;
+          if (next - stop < 3)
+            break;
+          stop = next;
+          name = "NAME";
+        }
+        matches.add(new Match(name, i, stop));
+      } else if (c >= '0' && c <= '9') {
+        if (joined)
+          return null;
+        stop = i + 1;
+        while (stop < end && text.charAt(stop) >= '0' && text.charAt(stop) <= '9')
+          stop++;
+        if (stop < end && isWord(text.charAt(stop)))
+          return null;
+        matches.add(new Match("NUMBER", i, stop));
+      } else if (PUNCTUATION.indexOf(c) >= 0) {
+        stop = i;
+        while (stop < end && PUNCTUATION.indexOf(text.charAt(stop)) >= 0) {
+          if (stop + 1 < end && !isPlain(text.charAt(stop), text.charAt(stop + 1)))
+            return null;
+          stop++;
+        }
+        matches.add(new Match("PUNCT", i, stop));
+      } else return null;
+      i = stop;
+    }
+    if (phrase >= 0) {
+      if (!isPhrase(text, phrase, phraseEnd))
+        return null;
+      matches.add(new Match("PHRASE", phrase, phraseEnd));
+    }
+    return matches;
+  }
+
+  /**
+   * Finds the end of a capitalized word, an uppercase letter and lowercase letters.
+   *
+   * @return the end of the word, or -1 if the word may join another match.
+   */
+  private static int capitalized(CharSequence text, int start, int end) {
+    int j = start + 1;
+    while (j < end && Character.getType(text.charAt(j)) == Character.LOWERCASE_LETTER)
+      j++;
+    if (j < end) {
+      char c = text.charAt(j);
+      if (isWord(c) || c == '+' || c == '&' || c == '-')
+        return -1;
+    }
+    return j;
+  }
+
+  /**
+   * Tells whether a punctuation followed by a character is kept out of the other
+   * patterns: a dot before a word is a URL or an abbreviation, and the signs and the
+   * separators before a digit are numbers, dates or times.
+   */
+  private static boolean isPlain(char c, char next) {
+    switch (c) {
+      case '.':
+        return !isWord(next) && next != '!';
+      case '+':
+      case '-':
+        return !isWord(next);
+      case ',':
+      case ':':
+        return next < '0' || next > '9';
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Tells whether PHRASE matches a lowercase phrase as a whole, its lookbehind
+   * rejecting the phrases which end with the scheme of a URL.
+   */
+  private static boolean isPhrase(CharSequence text, int start, int end) {
+    return !endsWith(text, start, end, "http") && !endsWith(text, start, end, "https")
+        && !endsWith(text, start, end, "ftp") && !endsWith(text, start, end, "git");
+  }
+
+  private static boolean endsWith(CharSequence text, int start, int end, String suffix) {
+    if (end - start < suffix.length())
+      return false;
+    for (int j = 0; j < suffix.length(); j++) {
+      if (text.charAt(end - suffix.length() + j) != suffix.charAt(j))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Tells whether a character is part of a word for a word boundary.
+   */
+  private static boolean isWord(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+}
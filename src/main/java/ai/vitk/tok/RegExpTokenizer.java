@@ -1,5 +1,6 @@
 package ai.vitk.tok;
 
+import ai.vitk.tok.PatternScanner.Match;
 import ai.vitk.tok.PhraseGraph.GraphPaths;
 import ai.vitk.type.Token;
 import ai.vitk.util.TokenShape;
@@ -12,8 +13,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Created by phuonglh on 11/16/16.
@@ -24,115 +23,195 @@ import java.util.regex.Pattern;
 public class RegExpTokenizer implements Serializable {
   static boolean verbose = false;
   static Logger logger = Logger.getLogger(RegExpTokenizer.class.getName());
+  private static final TextNormalizer NORMALIZER = new TextNormalizer();
   private final PhraseGraph graph;
-  static final List<ai.vitk.type.Pattern> patterns = new ArrayList<>(TokenShape.COMMON_PATTERNS);
-  static {
-    Collections.sort(patterns, Comparator.reverseOrder());
-  }
-
+  /** The patterns matched over the texts. */
+  private final PatternSet patternSet;
   static final List<ai.vitk.type.Pattern> extendedPatterns = new ArrayList<>(TokenShape.EXTENDED_PATTERNS);
   static {
     Collections.sort(extendedPatterns, Comparator.reverseOrder());
   }
+  private static final PatternScanner EXTENDED_SCANNER = new PatternScanner(extendedPatterns);
 
   public RegExpTokenizer(final Dictionary dictionary) {
-      this.graph = new PhraseGraph(dictionary);
+      this(dictionary, PatternSet.COMMON);
   }
   
   public RegExpTokenizer() {
+      this(PatternSet.COMMON);
+  }
+
+  /**
+   * Creates a tokenizer which matches some patterns instead of the common ones.
+   * @param patternSet a set of patterns
+   */
+  public RegExpTokenizer(final PatternSet patternSet) {
       this.graph = new PhraseGraph();
+      this.patternSet = patternSet;
+  }
+
+  /**
+   * Creates a tokenizer which segments the phrases with a dictionary and matches
+   * some patterns instead of the common ones.
+   * @param dictionary a dictionary
+   * @param patternSet a set of patterns
+   */
+  public RegExpTokenizer(final Dictionary dictionary, final PatternSet patternSet) {
+      this.graph = new PhraseGraph(dictionary);
+      this.patternSet = patternSet;
+  }
+
+  /**
+   * @return the dictionary used to segment the phrases.
+   */
+  Dictionary dictionary() {
+    return graph.dictionary();
   }
   
   /**
    * Segments a Vietnamese text into tokens.
    * @param text a text (plain sentence)
-   * @return a list of tokens
+   * @return a list of tokens, with their offsets in the text
    */
   public List<Token> tokenize(String text) {
-    text = text.trim();
-    if (text.isEmpty())
-      return new LinkedList<>();
-    int start = -1;
-    String token = "";
-    String regexp = "";
-    for (ai.vitk.type.Pattern p : patterns) {
-      Pattern pattern = p.getPattern();
-      Matcher matcher = pattern.matcher(text);
-      if (matcher.find()) {
-        token = matcher.group();
-        start = matcher.start();
-        regexp = p.getName();
-        break;
+    final TextNormalizer.Text normalized = NORMALIZER.text(text);
+    return tokenize(normalized, 0, normalized.length());
+  }
+
+  /**
+   * Segments a part of a normalized text, the tokens keeping their original forms.
+   */
+  private List<Token> tokenize(TextNormalizer.Text text, int begin, int end) {
+    List<Token> tokens = new LinkedList<>();
+    for (Match match : scan(text, begin, end)) {
+      if (match.name == null) {
+        if (verbose)
+          unmatched(text.original(match.start, match.end));
+      } else if (!match.name.equals("PHRASE")) {
+        tokens.add(token(text, match.start, match.end).setLemma(match.name));
+      } else {
+        final GraphPaths paths = graph.shortestPaths(text, match.start, match.end);
+        if (!paths.isEmpty()) {
+          for (Token token : paths.tokens(paths.size() - 1)) {
+            tokens.add(token.setLemma("WORD"));
+          }
+        } else {
+          logger.log(Level.WARNING, "Cannot tokenize the following phrase: [" + text.original(match.start, match.end).trim() + "]");
+        }
       }
     }
-    if (start >= 0) {
-      List<Token> tokens = new LinkedList<>();
-      List<Token> left = tokenize(text.substring(0, start));
-      List<Token> right = tokenize(text.substring(start + token.length()));
-      tokens.addAll(left);
-      if (!regexp.equals("PHRASE")) {
-        tokens.add(new Token("0", token.trim()).setLemma(regexp));
+    return tokens;
+  }
+
+  /**
+   * Segments a Vietnamese text into tokens, filling some spans instead of making
+   * the tokens. The spans are cleared first.
+   * @param text a text (plain sentence)
+   * @param spans the spans of the tokens, as those of {@link #tokenize(String)}
+   * @return the spans.
+   */
+  public TokenSpans tokenize(String text, TokenSpans spans) {
+    final TextNormalizer.Text normalized = NORMALIZER.text(text);
+    spans.clear(patternSet);
+    for (Match match : scan(normalized, 0, normalized.length())) {
+      if (match.name == null) {
+        if (verbose)
+          unmatched(normalized.original(match.start, match.end));
+      } else if (!match.name.equals("PHRASE")) {
+        final int begin = begin(normalized, match.start, match.end);
+        final int end = end(normalized, begin, match.end);
+        spans.add(begin, end, patternSet.typeCode(match.name), end);
       } else {
-        final GraphPaths paths = graph.shortestPaths(token.trim());
+        final GraphPaths paths = graph.shortestPaths(normalized, match.start, match.end);
         if (!paths.isEmpty()) {
-          List<String> words = paths.words(paths.size() - 1);
-          for (String word : words) {
-            tokens.add(new Token("0", word).setLemma("WORD"));
-          }
+          paths.spans(paths.size() - 1, spans);
         } else {
-          logger.log(Level.WARNING, "Cannot tokenize the following phrase: [" + token.trim() + "]");
+          logger.log(Level.WARNING, "Cannot tokenize the following phrase: [" + normalized.original(match.start, match.end).trim() + "]");
         }
       }
-      tokens.addAll(right);
-      return tokens;
-    } else {
-      if (verbose)
-        logger.log(Level.WARNING, "Cannot be matched by any regular expression! " + text);
-      return new LinkedList<>();
     }
+    return spans;
+  }
+
+  /**
+   * Makes the token of a match of a normalized text, trimmed, its word being
+   * taken from the original text.
+   */
+  private static Token token(TextNormalizer.Text text, int start, int end) {
+    final int begin = begin(text, start, end);
+    return new Token("0", text.original(), begin, end(text, begin, end));
+  }
+
+  /**
+   * Finds the offset in the original text where a match of a normalized text begins, trimmed.
+   */
+  private static int begin(TextNormalizer.Text text, int start, int end) {
+    final String original = text.original();
+    int begin = text.offset(start);
+    end = text.offset(end);
+    while (begin < end && original.charAt(begin) <= ' ')
+      begin++;
+    return begin;
+  }
+
+  /**
+   * Finds the offset in the original text where a match of a normalized text ends,
+   * trimmed, from its trimmed beginning there.
+   */
+  private static int end(TextNormalizer.Text text, int begin, int end) {
+    final String original = text.original();
+    end = text.offset(end);
+    while (end > begin && original.charAt(end - 1) <= ' ')
+      end--;
+    return end;
+  }
+
+  /**
+   * Finds the matches of the patterns in a part of a normalized text.
+   */
+  private List<Match> scan(TextNormalizer.Text text, int begin, int end) {
+    return patternSet.scan(text.composed(), begin, end);
+  }
+
+  private static void unmatched(String part) {
+    logger.log(Level.WARNING, "Cannot be matched by any regular expression! " + part);
   }
 
   /**
    * Segments an English text into tokens, simply using space as delimiter for PHRASE types.
    * @param text a text (plain sentence)
-   * @return a list of tokens
+   * @return a list of tokens, with their offsets in the text
    */
   public static List<Token> split(String text) {
-    text = text.trim();
-    if (text.isEmpty())
-      return new LinkedList<>();
-    int start = -1;
-    String token = "";
-    String regexp = "";
-    for (ai.vitk.type.Pattern p : extendedPatterns) {
-      Pattern pattern = p.getPattern();
-      Matcher matcher = pattern.matcher(text);
-      if (matcher.find()) {
-        token = matcher.group();
-        start = matcher.start();
-        regexp = p.getName();
-        break;
-      }
-    }
-    if (start >= 0) {
-      List<Token> tokens = new LinkedList<>();
-      List<Token> left = split(text.substring(0, start));
-      List<Token> right = split(text.substring(start + token.length()));
-      tokens.addAll(left);
-      if (!regexp.equals("PHRASE")) {
-        tokens.add(new Token("0", token.trim()).setLemma(regexp));
+    List<Token> tokens = new LinkedList<>();
+    for (Match match : EXTENDED_SCANNER.scan(text, 0, text.length())) {
+      // the match trimmed
+      int start = match.start;
+      int end = match.end;
+      while (start < end && text.charAt(start) <= ' ')
+        start++;
+      while (end > start && text.charAt(end - 1) <= ' ')
+        end--;
+      if (match.name == null) {
+        if (verbose)
+          unmatched(text.substring(match.start, match.end));
+      } else if (!match.name.equals("PHRASE") || start == end) {
+        tokens.add(new Token("0", text, start, end).setLemma(match.name.equals("PHRASE") ? "WORD" : match.name));
       } else {
-        String[] ws = token.trim().split("\\s+");
-        for (String w: ws)
-          tokens.add(new Token("0", w).setLemma("WORD"));
+        // the words apart by white spaces
+        int j = start;
+        while (j < end) {
+          int k = j;
+          while (k < end && !PatternScanner.isSpace(text.charAt(k)))
+            k++;
+          tokens.add(new Token("0", text, j, k).setLemma("WORD"));
+          j = k;
+          while (j < end && PatternScanner.isSpace(text.charAt(j)))
+            j++;
+        }
       }
-      tokens.addAll(right);
-      return tokens;
-    } else {
-      if (verbose)
-        logger.log(Level.WARNING, "Cannot be matched by any regular expression! " + text);
-      return new LinkedList<>();
     }
+    return tokens;
   }
 
   /**
@@ -141,112 +220,57 @@ public class RegExpTokenizer implements Serializable {
    * @return a list of segmentations, each is a list of tokens
    */
   public List<List<Token>> iterate(String text) {
-    text = text.trim();
-    if (text.isEmpty())
-      return new LinkedList<>();
-    int start = -1;
-    String token = "";
-    String regexp = "";
-    for (ai.vitk.type.Pattern p : patterns) {
-      Pattern pattern = p.getPattern();
-      Matcher matcher = pattern.matcher(text);
-      if (matcher.find()) {
-        token = matcher.group();
-        start = matcher.start();
-        regexp = p.getName();
-        break;
-      }
-    }
-    if (start >= 0) {
-      List<List<Token>> left = iterate(text.substring(0, start));
-      List<List<Token>> right = iterate(text.substring(start + token.length()));
+    final TextNormalizer.Text normalized = NORMALIZER.text(text);
+    return iterate(normalized, 0, normalized.length());
+  }
+
+  /**
+   * Combines the segmentations of the matches of a part of a normalized text, 
+   * in the order of the matches.
+   */
+  private List<List<Token>> iterate(TextNormalizer.Text text, int begin, int end) {
+    List<List<Token>> result = new LinkedList<>();
+    for (Match match : scan(text, begin, end)) {
       List<List<Token>> middle = new LinkedList<>();
-      if (!regexp.equals("PHRASE")) {
-        Token t = new Token("0", token.trim()).setLemma(regexp);
+      if (match.name == null) {
+        if (verbose)
+          unmatched(text.original(match.start, match.end));
+      } else if (!match.name.equals("PHRASE")) {
+        Token t = token(text, match.start, match.end).setLemma(match.name);
         List<Token> ts = new LinkedList<>();
         ts.add(t);
         middle.add(ts);
       } else {
-        final GraphPaths paths = graph.shortestPaths(token.trim());
+        final GraphPaths paths = graph.shortestPaths(text, match.start, match.end);
         if (!paths.isEmpty()) {
           for (int i = 0; i < paths.size(); i++) {
             List<Token> tokens = new LinkedList<>();
-            List<String> words = paths.words(i);
-            for (String word : words) {
-              tokens.add(new Token("0", word).setLemma("WORD"));
+            for (Token token : paths.tokens(i)) {
+              tokens.add(token.setLemma("WORD"));
             }
             middle.add(tokens);
           }
         } else {
-          logger.log(Level.WARNING, "Cannot tokenize the following phrase: [" + token.trim() + "]");
+          logger.log(Level.WARNING, "Cannot tokenize the following phrase: [" + text.original(match.start, match.end).trim() + "]");
         }
       }
-      List<List<Token>> result = new LinkedList<>();
-      if (left.isEmpty()) {
-        if (middle.isEmpty())
-          result.addAll(right);
-        else {
-          // result = middle + right
-          if (right.isEmpty())
-            result.addAll(middle);
-          else {
-            for (List<Token> u : middle) {
-              for (List<Token> v : right) {
-                List<Token> xs = new LinkedList<>(u);
-                xs.addAll(v);
-                result.add(xs);
-              }
-            }
-          }
-        }
+      if (middle.isEmpty())
+        continue;
+      if (result.isEmpty()) {
+        result = middle;
       } else {
-        if (middle.isEmpty()) {
-          if (right.isEmpty()) 
-            result.addAll(left);
-          else {
-            // result = left + right
-            for (List<Token> u : left) {
-              for (List<Token> v : right) {
-                List<Token> xs = new LinkedList<>(u);
-                xs.addAll(v);
-                result.add(xs);
-              }
-            }
-          }
-        } else {
-          // uv = left + middle
-          List<List<Token>> uv = new LinkedList<>();
-          if (middle.isEmpty())
-            uv.addAll(left);
-          else {
-            for (List<Token> u : left) {
-              for (List<Token> v : middle) {
-                List<Token> xs = new LinkedList<>(u);
-                xs.addAll(v);
-                uv.add(xs);
-              }
-            }
-          }
-          if (right.isEmpty()) 
-            result.addAll(uv);
-          else {
-            // result = uv + right
-            for (List<Token> u : uv) {
-              for (List<Token> v : right) {
-                List<Token> xs = new LinkedList<>(u);
-                xs.addAll(v);
-                result.add(xs);
-              }
-            }
+        // result = result + middle
+        List<List<Token>> uv = new LinkedList<>();
+        for (List<Token> u : result) {
+          for (List<Token> v : middle) {
+            List<Token> xs = new LinkedList<>(u);
+            xs.addAll(v);
+            uv.add(xs);
           }
         }
+        result = uv;
       }
-      return result;
-    } else {
-      if (verbose) {
-        logger.log(Level.WARNING, "Cannot be matched by any regular expression! " + text);
-      }
-      return new LinkedList<>();
     }
+    return result;
   }
 }
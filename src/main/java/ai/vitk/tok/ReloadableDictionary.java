@@ -0,0 +1,276 @@
+package ai.vitk.tok;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A dictionary whose words can be replaced while it is in use. A new dictionary
+ * is built in the background by a loader and published by swapping a single
+ * reference, so that the readers never wait: each lookup, and each cursor
+ * for its whole phrase, sees either the old or the new dictionary.
+ * <p>
+ * A failed reload leaves the current dictionary in place, and a reload never
+ * replaces the dictionary of a reload started after it.
+ * <p>
+ * A reloadable dictionary is serializable when its dictionary and its loader are,
+ * as those of {@link #of(Path)}; the copy reloads from the same file.
+ */
+public class ReloadableDictionary implements Dictionary, Serializable {
+  private static final long serialVersionUID = 1L;
+  /** Runs the reloads one after the other, so that they are published in order. */
+  private static final ExecutorService RELOADER = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "dictionary-reloader");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final Callable<? extends Dictionary> loader;
+  /** The number of the last reload started. */
+  private final AtomicLong reloads = new AtomicLong();
+  private final AtomicReference<Snapshot> snapshot;
+
+  /**
+   * Creates a reloadable dictionary.
+   *
+   * @param initial the dictionary used until the first reload.
+   * @param loader builds a new dictionary at each reload.
+   */
+  public ReloadableDictionary(Dictionary initial, Callable<? extends Dictionary> loader) {
+    this.loader = loader;
+    this.snapshot = new AtomicReference<>(new Snapshot(0, initial));
+  }
+
+  /**
+   * Creates a dictionary of the words of a list, reloaded from the file.
+   *
+   * @param wordList a UTF-8 word list, one word per line; each word is added
+   *                 in its original and its lowercase forms.
+   * @return a dictionary
+   * @throws IOException if the word list cannot be read.
+   */
+  public static ReloadableDictionary of(Path wordList) throws IOException {
+    return of(null, wordList);
+  }
+
+  /**
+   * Creates a dictionary of the words of a base dictionary and of a list,
+   * only the list being reloaded from its file.
+   *
+   * @param base a dictionary, e.g. {@link DefaultDictionary.Data#INSTANCE}.
+   * @param wordList a UTF-8 word list, one word per line.
+   * @return a dictionary
+   * @throws IOException if the word list cannot be read.
+   */
+  public static ReloadableDictionary of(Dictionary base, Path wordList) throws IOException {
+    return new ReloadableDictionary(read(base, wordList), new WordList(base, wordList));
+  }
+
+  private static Dictionary read(Dictionary base, Path wordList) throws IOException {
+    Lexicon lexicon = new Lexicon();
+    for (String word : Files.readAllLines(wordList, StandardCharsets.UTF_8)) {
+      lexicon.addWord(word);
+      lexicon.addWord(word.toLowerCase());
+    }
+    lexicon.freeze();
+    return base == null ? lexicon : new Union(base, lexicon);
+  }
+
+  /**
+   * Gets the dictionary currently in use.
+   *
+   * @return a dictionary
+   */
+  public Dictionary snapshot() {
+    return snapshot.get().dictionary;
+  }
+
+  /**
+   * Builds a new dictionary in the background and publishes it.
+   *
+   * @return the new dictionary, or an exception if it cannot be built.
+   */
+  public CompletableFuture<Dictionary> reload() {
+    return reload(RELOADER);
+  }
+
+  /**
+   * Builds a new dictionary with an executor and publishes it, unless the
+   * dictionary of a later reload is published first.
+   *
+   * @param executor an executor
+   * @return the dictionary in use after the reload, the new one or a later one;
+   * or an exception if it cannot be built.
+   */
+  public CompletableFuture<Dictionary> reload(Executor executor) {
+    CompletableFuture<Dictionary> future = new CompletableFuture<>();
+    long number = reloads.incrementAndGet();
+    executor.execute(() -> {
+      try {
+        Snapshot next = new Snapshot(number, loader.call());
+        Snapshot current = snapshot.get();
+        while (current.number < number && !snapshot.compareAndSet(current, next)) {
+          current = snapshot.get();
+        }
+        future.complete(current.number < number ? next.dictionary : current.dictionary);
+      } catch (Exception e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Reloads the dictionary each time a file is created or modified.
+   *
+   * @param file a file, usually the word list of the dictionary.
+   * @return a handle to stop watching the file.
+   * @throws IOException if the file cannot be watched.
+   */
+  public Closeable watch(Path file) throws IOException {
+    Path path = file.toAbsolutePath();
+    WatchService service = path.getFileSystem().newWatchService();
+    path.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    Thread thread = new Thread(() -> {
+      try {
+        while (true) {
+          WatchKey key = service.take();
+          boolean changed = false;
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (path.getFileName().equals(event.context()))
+              changed = true;
+          }
+          // one reload for the events of a batch
+          if (changed)
+            reload().exceptionally(e -> {
+              e.printStackTrace();
+              return null;
+            });
+          key.reset();
+        }
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        // stop watching
+      }
+    }, "dictionary-watcher");
+    thread.setDaemon(true);
+    thread.start();
+    return service;
+  }
+
+  @Override
+  public boolean hasWord(String word) {
+    return snapshot.get().dictionary.hasWord(word);
+  }
+
+  @Override
+  public boolean hasLowerCaseWord(String word) {
+    return snapshot.get().dictionary.hasLowerCaseWord(word);
+  }
+
+  @Override
+  public boolean isPrefix(String s) {
+    return snapshot.get().dictionary.isPrefix(s);
+  }
+
+  @Override
+  public Cursor cursor(String[] syllables) {
+    return snapshot.get().dictionary.cursor(syllables);
+  }
+
+  /**
+   * Computes the statistics of the dictionary currently in use.
+   */
+  @Override
+  public DictionaryStatistics statistics() {
+    return snapshot.get().dictionary.statistics();
+  }
+
+  /**
+   * A dictionary and the number of the reload which built it, 0 for the initial one.
+   */
+  private static final class Snapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+    final long number;
+    final Dictionary dictionary;
+
+    Snapshot(long number, Dictionary dictionary) {
+      this.number = number;
+      this.dictionary = dictionary;
+    }
+  }
+
+  /**
+   * Reads a word list again, the path being kept as a string so that it can be
+   * serialized.
+   */
+  private static final class WordList implements Callable<Dictionary>, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final Dictionary base;
+    private final String path;
+
+    WordList(Dictionary base, Path wordList) {
+      this.base = base;
+      this.path = wordList.toAbsolutePath().toString();
+    }
+
+    @Override
+    public Dictionary call() throws IOException {
+      return read(base, Paths.get(path));
+    }
+  }
+
+  /**
+   * A word is in the union of two dictionaries if it is in any of them.
+   */
+  private static final class Union implements Dictionary, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final Dictionary first;
+    private final Dictionary second;
+
+    Union(Dictionary first, Dictionary second) {
+      this.first = first;
+      this.second = second;
+    }
+
+    @Override
+    public boolean hasWord(String word) {
+      return first.hasWord(word) || second.hasWord(word);
+    }
+
+    @Override
+    public boolean hasLowerCaseWord(String word) {
+      return first.hasLowerCaseWord(word) || second.hasLowerCaseWord(word);
+    }
+
+    @Override
+    public boolean isPrefix(String s) {
+      return first.isPrefix(s) || second.isPrefix(s);
+    }
+
+    @Override
+    public Cursor cursor(String[] syllables) {
+      return new Lexicons.UnionCursor(new Cursor[]{first.cursor(syllables), second.cursor(syllables)});
+    }
+
+    @Override
+    public DictionaryStatistics statistics() {
+      return DictionaryStatistics.sum(first.statistics(), second.statistics());
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package ai.vitk.tok;
+
+/**
+ * The default cursor of a dictionary, which looks up each candidate word 
+ * with {@link Dictionary#hasWord(String)} and {@link Dictionary#isPrefix(String)}.
+ */
+class StringCursor implements Dictionary.Cursor {
+  private final Dictionary dictionary;
+  private final String[] syllables;
+  private int position;
+  private String candidate;
+  private boolean alive;
+
+  StringCursor(Dictionary dictionary, String[] syllables) {
+    this.dictionary = dictionary;
+    this.syllables = syllables;
+  }
+
+  @Override
+  public void start(int position) {
+    this.position = position;
+    this.candidate = null;
+    this.alive = true;
+  }
+
+  @Override
+  public boolean next() {
+    if (!alive || position >= syllables.length) {
+      alive = false;
+      return false;
+    }
+    candidate = candidate == null ? syllables[position] : candidate + ' ' + syllables[position];
+    position++;
+    alive = dictionary.isPrefix(candidate);
+    return alive;
+  }
+
+  @Override
+  public boolean isWord() {
+    return alive && dictionary.hasWord(candidate);
+  }
+
+  @Override
+  public boolean canContinue() {
+    return alive && dictionary.isPrefix(candidate + ' ');
+  }
+}
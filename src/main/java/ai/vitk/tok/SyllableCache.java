@@ -0,0 +1,132 @@
+package ai.vitk.tok;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the syllables met in the texts, shared by all the threads.
+ * A syllable is looked up by its original characters, without building a string,
+ * and the cache hands out the same strings for its original and normalized forms
+ * each time it is met.
+ * <p>
+ * The cache is a fixed array of slots, two slots for each hash, so that it never
+ * grows: a new syllable replaces the older syllable of its slots. The slots are
+ * read and written without locks, a syllable being immutable.
+ */
+public final class SyllableCache {
+  private final AtomicReferenceArray<Syllable> slots;
+  private final int mask;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Creates a cache.
+   *
+   * @param capacity the maximal number of syllables, rounded up to a power of two.
+   */
+  public SyllableCache(int capacity) {
+    if (capacity < 2 || capacity > 1 << 30)
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    int size = Integer.highestOneBit(capacity - 1) << 1;
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /**
+   * Gets the syllable of some characters of a normalized text.
+   *
+   * @param text a normalized text
+   * @param begin the first composed character of the syllable.
+   * @param end the composed character after the last.
+   * @return a syllable
+   */
+  Syllable get(TextNormalizer.Text text, int begin, int end) {
+    final String original = text.original();
+    final int from = text.offset(begin);
+    final int to = text.offset(end);
+    int h = 0;
+    for (int j = from; j < to; j++) {
+      h = 31 * h + original.charAt(j);
+    }
+    final int slot = (h ^ h >>> 16) & mask & ~1;
+    final Syllable first = slots.get(slot);
+    if (first != null && first.matches(h, original, from, to)) {
+      hits.increment();
+      return first;
+    }
+    final Syllable second = slots.get(slot + 1);
+    if (second != null && second.matches(h, original, from, to)) {
+      hits.increment();
+      return second;
+    }
+    misses.increment();
+    final Syllable syllable = new Syllable(original.substring(from, to), text.normalized(begin, end), h);
+    // the older syllable is replaced
+    slots.lazySet(slot + 1, first);
+    slots.lazySet(slot, syllable);
+    return syllable;
+  }
+
+  /**
+   * @return the number of syllables found in the cache.
+   */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the number of syllables which were not in the cache.
+   */
+  public long misses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the rate of the syllables found in the cache, 0 if none was looked up.
+   */
+  public double hitRate() {
+    long h = hits.sum();
+    long n = h + misses.sum();
+    return n == 0 ? 0 : (double) h / n;
+  }
+
+  /**
+   * @return the maximal number of syllables of the cache.
+   */
+  public int capacity() {
+    return slots.length();
+  }
+
+  /**
+   * Counts the syllables of the cache, by a walk through its slots.
+   *
+   * @return the number of syllables.
+   */
+  public int size() {
+    int n = 0;
+    for (int j = 0; j < slots.length(); j++) {
+      if (slots.get(j) != null)
+        n++;
+    }
+    return n;
+  }
+
+  /**
+   * A syllable in its original and normalized forms.
+   */
+  static final class Syllable {
+    final String original;
+    final String normalised;
+    private final int hash;
+
+    Syllable(String original, String normalised, int hash) {
+      this.original = original;
+      this.normalised = normalised;
+      this.hash = hash;
+    }
+
+    private boolean matches(int h, String s, int from, int to) {
+      return hash == h && original.length() == to - from && s.regionMatches(from, original, 0, to - from);
+    }
+  }
+}
@@ -0,0 +1,551 @@
+package ai.vitk.tok;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A dictionary of words seen as sequences of syllables. Each distinct syllable
+ * is interned to an integer, and the words are stored in a prefix tree whose
+ * edges are labelled by syllables instead of characters, so that a lookup
+ * makes one transition per syllable and never compares the spaces.
+ * <p>
+ * The cursor of the dictionary maps the syllables of a phrase to their
+ * integers once, the phrase graph then walking the tree with integer
+ * transitions only.
+ * <p>
+ * The syllables are folded as the labels of a {@link Lexicon}, so that a word
+ * is stored once whatever its case: the state where a word ends keeps the case
+ * forms of the word, its lowercase form and the case masks of the others, bit i
+ * of a mask being set if character i is uppercase. The syllables of a word are
+ * looked up in the word itself, without copying them.
+ */
+public class SyllableDictionary implements Dictionary, Serializable {
+  private static final long serialVersionUID = 2L;
+  private static final int MASK_LENGTH = Lexicon.MASK_LENGTH;
+  /** The folded syllables by integer. */
+  private final String[] syllables;
+  /** The integers of the syllables plus one by the hash of the syllables, 0 for none. */
+  private final int[] table;
+  /**
+   * The first edge of each state shifted left by two, or'ed with 1 if the
+   * lowercase form of a word ends at the state and with 2 if other forms end
+   * there; with an extra entry marking the end of the edges. The states are
+   * numbered in breadth-first order from the root (state 0), so that the
+   * target of edge e is the state e + 1.
+   */
+  private final int[] states;
+  private final int[] labels;
+  /** The states where other forms than the lowercase one end, in order. */
+  private final int[] cased;
+  /** The end of the case masks of each of these states. */
+  private final int[] casedEnds;
+  private final long[] masks;
+  /**
+   * The earliest and the latest first uppercase character of the words ending
+   * below each state, MASK_LENGTH for a word in lowercase; MASK_LENGTH and -1 if
+   * no word ends below the state.
+   */
+  private final byte[] earliest;
+  private final byte[] latest;
+
+  private SyllableDictionary(String[] syllables, int[] states, int[] labels,
+                             int[] cased, int[] casedEnds, long[] masks, byte[] earliest, byte[] latest) {
+    this.syllables = syllables;
+    this.states = states;
+    this.labels = labels;
+    this.cased = cased;
+    this.casedEnds = casedEnds;
+    this.masks = masks;
+    this.earliest = earliest;
+    this.latest = latest;
+    this.table = new int[Math.max(2, Integer.highestOneBit(Math.max(1, syllables.length)) << 2)];
+    for (int id = 0; id < syllables.length; id++) {
+      // the syllables are folded already, beyond the case masks too
+      int slot = hash(syllables[id], 0, syllables[id].length(), MASK_LENGTH, false) & (table.length - 1);
+      while (table[slot] != 0)
+        slot = (slot + 1) & (table.length - 1);
+      table[slot] = id + 1;
+    }
+  }
+
+  /**
+   * Builds the dictionary of the words of some lexicons.
+   *
+   * @param lexicons lexicons
+   * @return a dictionary
+   */
+  public static SyllableDictionary of(Lexicon... lexicons) {
+    Builder builder = new Builder();
+    for (Lexicon lexicon : lexicons) {
+      builder.add(lexicon.root(), builder.root, new StringBuilder());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Builds the dictionary of some words.
+   *
+   * @param words words
+   * @return a dictionary
+   */
+  public static SyllableDictionary of(Iterable<String> words) {
+    Lexicon lexicon = new Lexicon();
+    for (String word : words) {
+      lexicon.addWord(word);
+    }
+    return of(lexicon);
+  }
+
+  /**
+   * Gets the integer of a syllable, in any case.
+   *
+   * @param syllable a syllable
+   * @return its integer, or -1 if no word contains the syllable.
+   */
+  public int id(String syllable) {
+    return id(syllable, 0, syllable.length(), 0, false);
+  }
+
+  /**
+   * Finds the integer of a syllable of a word, folded as at its position in the word.
+   *
+   * @param s a word
+   * @param begin the first character of the syllable.
+   * @param end the character after the last.
+   * @param position the position of the syllable in the word.
+   * @param lower whether the syllable is lowercased first.
+   * @return its integer, or -1.
+   */
+  private int id(CharSequence s, int begin, int end, int position, boolean lower) {
+    int slot = hash(s, begin, end, position, lower) & (table.length - 1);
+    for (int id; (id = table[slot] - 1) >= 0; slot = (slot + 1) & (table.length - 1)) {
+      String syllable = syllables[id];
+      if (syllable.length() == end - begin && matches(syllable, s, begin, end, position, lower))
+        return id;
+    }
+    return -1;
+  }
+
+  private static char fold(char c, int position, boolean lower) {
+    return Lexicon.fold(lower ? Character.toLowerCase(c) : c, position);
+  }
+
+  private static int hash(CharSequence s, int begin, int end, int position, boolean lower) {
+    int h = 0;
+    for (int j = begin; j < end; j++) {
+      h = 31 * h + fold(s.charAt(j), position + j - begin, lower);
+    }
+    return h ^ h >>> 16;
+  }
+
+  /**
+   * Tests whether a folded syllable starts with a part of a word.
+   */
+  private static boolean matches(String syllable, CharSequence s, int begin, int end, int position, boolean lower) {
+    for (int j = begin; j < end; j++) {
+      if (syllable.charAt(j - begin) != fold(s.charAt(j), position + j - begin, lower))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Gets the case mask of a part of a word.
+   */
+  private static long mask(CharSequence s, int begin, int end, int position) {
+    long mask = 0;
+    for (int j = begin; j < end && position + j - begin < MASK_LENGTH; j++) {
+      char c = s.charAt(j);
+      if (Lexicon.fold(c, position + j - begin) != c)
+        mask |= 1L << (position + j - begin);
+    }
+    return mask;
+  }
+
+  /**
+   * Finds the target of the edge labelled by a syllable from a state.
+   * @return the target state or -1 if there is no such edge.
+   */
+  private int next(int s, int id) {
+    int lo = states[s] >>> 2;
+    int hi = (states[s + 1] >>> 2) - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (labels[mid] < id)
+        lo = mid + 1;
+      else if (labels[mid] > id)
+        hi = mid - 1;
+      else return mid + 1;
+    }
+    return -1;
+  }
+
+  /**
+   * Tests whether the form of a word given by a case mask ends at a state.
+   */
+  private boolean hasForm(int s, long mask) {
+    if (mask == 0)
+      return (states[s] & 1) != 0;
+    if ((states[s] & 2) == 0)
+      return false;
+    int k = Arrays.binarySearch(cased, s);
+    for (int j = k == 0 ? 0 : casedEnds[k - 1]; j < casedEnds[k]; j++) {
+      if (masks[j] == mask)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Tests whether a form of a word ending at a state has the case of a prefix,
+   * given by its case mask and the mask of its characters.
+   */
+  private boolean hasForm(int s, long mask, long low) {
+    if (mask == 0 && (states[s] & 1) != 0)
+      return true;
+    if ((states[s] & 2) == 0)
+      return false;
+    int k = Arrays.binarySearch(cased, s);
+    for (int j = k == 0 ? 0 : casedEnds[k - 1]; j < casedEnds[k]; j++) {
+      if ((masks[j] & low) == mask)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Walks the syllables of a word.
+   * @return the state where the word ends, or -1.
+   */
+  private int walk(String word, boolean lower) {
+    if (word.length() == 0)
+      return -1;
+    int state = 0;
+    int begin = 0;
+    while (state >= 0) {
+      int end = word.indexOf(' ', begin);
+      if (end < 0)
+        end = word.length();
+      int id = id(word, begin, end, begin, lower);
+      state = id >= 0 ? next(state, id) : -1;
+      if (end == word.length())
+        break;
+      begin = end + 1;
+    }
+    return state;
+  }
+
+  @Override
+  public boolean hasWord(String word) {
+    int state = walk(word, false);
+    return state >= 0 && hasForm(state, mask(word, 0, word.length(), 0));
+  }
+
+  @Override
+  public boolean hasLowerCaseWord(String word) {
+    int state = walk(word, true);
+    return state >= 0 && (states[state] & 1) != 0;
+  }
+
+  /**
+   * Verifies whether a string is the prefix of a word, answering as
+   * {@link Lexicon#isPrefix(String)} does.
+   */
+  @Override
+  public boolean isPrefix(String s) {
+    if (s.length() == 0)
+      return false;
+    int state = 0;
+    int begin = 0;
+    int end;
+    while ((end = s.indexOf(' ', begin)) >= 0 && state >= 0) {
+      int id = id(s, begin, end, begin, false);
+      state = id >= 0 ? next(state, id) : -1;
+      begin = end + 1;
+    }
+    if (state < 0)
+      return false;
+    // the last syllable may be incomplete
+    long mask = mask(s, 0, s.length(), 0);
+    int d = Math.min(s.length(), MASK_LENGTH);
+    long low = s.length() >= MASK_LENGTH ? -1L : (1L << s.length()) - 1;
+    for (int e = states[state] >>> 2; e < states[state + 1] >>> 2; e++) {
+      String syllable = syllables[labels[e]];
+      if (syllable.length() < s.length() - begin || !matches(syllable, s, begin, s.length(), begin, false))
+        continue;
+      int t = e + 1;
+      // a word ending here or below must have the case of the prefix
+      if (syllable.length() == s.length() - begin && hasForm(t, mask, low))
+        return true;
+      if (mask == 0 ? latest[t] >= d : earliest[t] < d)
+        return true;
+      if (syllable.length() > s.length() - begin && hasBelow(t, mask, d))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Tests whether a form of a word ending at a state is below a prefix of d
+   * characters having a case mask, as told by its first uppercase character.
+   */
+  private boolean hasBelow(int s, long mask, int d) {
+    if ((states[s] & 1) != 0 && mask == 0)
+      return true;
+    if ((states[s] & 2) == 0)
+      return false;
+    int k = Arrays.binarySearch(cased, s);
+    for (int j = k == 0 ? 0 : casedEnds[k - 1]; j < casedEnds[k]; j++) {
+      if (mask == 0 ? Long.numberOfTrailingZeros(masks[j]) >= d : Long.numberOfTrailingZeros(masks[j]) < d)
+        return true;
+    }
+    return false;
+  }
+
+  @Override
+  public Dictionary.Cursor cursor(String[] syllables) {
+    int[] phrase = new int[syllables.length];
+    long[] cases = new long[syllables.length];
+    for (int j = 0; j < syllables.length; j++) {
+      phrase[j] = id(syllables[j]);
+      cases[j] = mask(syllables[j], 0, syllables[j].length(), 0);
+    }
+    return new Cursor(syllables, phrase, cases);
+  }
+
+  /**
+   * Gets the number of distinct syllables of the words, in any case.
+   *
+   * @return the number of syllables.
+   */
+  public int numSyllables() {
+    return syllables.length;
+  }
+
+  /**
+   * Gets the number of states of the prefix tree, the root included.
+   *
+   * @return the number of states.
+   */
+  public int numStates() {
+    return states.length - 1;
+  }
+
+  private int numForms(int s) {
+    int n = states[s] & 1;
+    if ((states[s] & 2) != 0) {
+      int k = Arrays.binarySearch(cased, s);
+      n += casedEnds[k] - (k == 0 ? 0 : casedEnds[k - 1]);
+    }
+    return n;
+  }
+
+  /**
+   * Computes the statistics of the prefix tree, whose nodes are its states.
+   */
+  @Override
+  public DictionaryStatistics statistics() {
+    long bytes = DictionaryStatistics.array(states.length, 4)
+        + DictionaryStatistics.array(labels.length, 4)
+        + DictionaryStatistics.array(syllables.length, 4)
+        + DictionaryStatistics.array(table.length, 4)
+        + DictionaryStatistics.array(cased.length, 4)
+        + DictionaryStatistics.array(casedEnds.length, 4)
+        + DictionaryStatistics.array(masks.length, 8)
+        + 2 * DictionaryStatistics.array(earliest.length, 1);
+    for (String syllable : syllables) {
+      bytes += DictionaryStatistics.string(syllable);
+    }
+    // each syllable comes after a space, but those of the edges of the root
+    int first = states[1] >>> 2;
+    return DictionaryStatistics.ofAutomaton(numStates(), s -> states[s] >>> 2 << 1 | ((states[s] & 3) != 0 ? 1 : 0), e -> e + 1,
+        e -> syllables[labels[e]].length() + (e < first ? 0 : 1), e -> 1, 0, this::numForms, bytes);
+  }
+
+  private class Cursor implements Dictionary.Cursor {
+    private final String[] words;
+    private final int[] phrase;
+    private final long[] cases;
+    private int position;
+    private int state;
+    /** The length of the candidate word and its case mask. */
+    private int length;
+    private long mask;
+
+    Cursor(String[] words, int[] phrase, long[] cases) {
+      this.words = words;
+      this.phrase = phrase;
+      this.cases = cases;
+    }
+
+    @Override
+    public void start(int position) {
+      this.position = position;
+      this.state = 0;
+      this.length = -1;
+      this.mask = 0;
+    }
+
+    @Override
+    public boolean next() {
+      if (state < 0 || position >= phrase.length) {
+        state = -1;
+        return false;
+      }
+      String syllable = words[position];
+      int offset = length + 1;
+      int id = phrase[position];
+      if (offset + syllable.length() <= MASK_LENGTH) {
+        mask |= cases[position] << offset;
+      } else {
+        // the characters beyond the case masks are not folded
+        id = id(syllable, 0, syllable.length(), offset, false);
+        mask |= mask(syllable, 0, syllable.length(), offset);
+      }
+      position++;
+      length = offset + syllable.length();
+      state = id >= 0 ? SyllableDictionary.this.next(state, id) : -1;
+      return state >= 0;
+    }
+
+    @Override
+    public boolean isWord() {
+      return state >= 0 && hasForm(state, mask);
+    }
+
+    @Override
+    public boolean canContinue() {
+      return state >= 0 && states[state] >>> 2 < states[state + 1] >>> 2;
+    }
+  }
+
+  /**
+   * Builds the tree of the syllables from the folded tree of a lexicon.
+   */
+  private static final class Builder {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> syllables = new ArrayList<>();
+    private final Node root = new Node();
+    private int numStates = 1;
+
+    /**
+     * Adds the words below a node of a lexicon, the state of the syllables
+     * before being given, and the characters of the current syllable.
+     */
+    void add(Lexicon.Node node, Node state, StringBuilder syllable) {
+      for (int j = 0; j < node.size; j++) {
+        Lexicon.Node child = node.children[j];
+        char c = node.labels[j];
+        if (c == ' ') {
+          add(child, child(state, syllable.toString()), new StringBuilder());
+        } else {
+          syllable.append(c);
+          if (child.lower || child.masks != null)
+            child(state, syllable.toString()).addForms(child);
+          add(child, state, syllable);
+          syllable.setLength(syllable.length() - 1);
+        }
+      }
+    }
+
+    private Node child(Node node, String syllable) {
+      Integer id = ids.get(syllable);
+      if (id == null) {
+        id = syllables.size();
+        ids.put(syllable, id);
+        syllables.add(syllable);
+      }
+      Node child = node.children.get(id);
+      if (child == null) {
+        child = new Node();
+        node.children.put(id, child);
+        numStates++;
+      }
+      return child;
+    }
+
+    SyllableDictionary build() {
+      // number the nodes in breadth-first order, so that the edges of
+      // each state are contiguous
+      List<Node> nodes = new ArrayList<>(numStates);
+      nodes.add(root);
+      int[] states = new int[numStates + 1];
+      int[] labels = new int[numStates - 1];
+      List<Integer> cased = new ArrayList<>();
+      List<Long> masks = new ArrayList<>();
+      List<Integer> casedEnds = new ArrayList<>();
+      int edge = 0;
+      for (int s = 0; s < nodes.size(); s++) {
+        Node node = nodes.get(s);
+        states[s] = edge << 2 | (node.lower ? 1 : 0) | (node.masks.isEmpty() ? 0 : 2);
+        if (!node.masks.isEmpty()) {
+          cased.add(s);
+          masks.addAll(node.masks);
+          casedEnds.add(masks.size());
+        }
+        for (Map.Entry<Integer, Node> entry : node.children.entrySet()) {
+          labels[edge++] = entry.getKey();
+          entry.getValue().parent = s;
+          nodes.add(entry.getValue());
+        }
+      }
+      states[numStates] = edge << 2;
+      // the words below each state, from the last state back
+      byte[] earliest = new byte[numStates];
+      byte[] latest = new byte[numStates];
+      Arrays.fill(earliest, (byte) MASK_LENGTH);
+      Arrays.fill(latest, (byte) -1);
+      for (int s = numStates - 1; s > 0; s--) {
+        Node node = nodes.get(s);
+        int parent = node.parent;
+        int e = Math.min(earliest[s], node.earliest());
+        int l = Math.max(latest[s], node.latest());
+        earliest[parent] = (byte) Math.min(earliest[parent], e);
+        latest[parent] = (byte) Math.max(latest[parent], l);
+      }
+      return new SyllableDictionary(syllables.toArray(new String[syllables.size()]), states, labels,
+          cased.stream().mapToInt(Integer::intValue).toArray(),
+          casedEnds.stream().mapToInt(Integer::intValue).toArray(),
+          masks.stream().mapToLong(Long::longValue).toArray(), earliest, latest);
+    }
+  }
+
+  private static final class Node {
+    boolean lower;
+    final List<Long> masks = new ArrayList<>(0);
+    final TreeMap<Integer, Node> children = new TreeMap<>();
+    int parent;
+
+    void addForms(Lexicon.Node node) {
+      lower |= node.lower;
+      if (node.masks != null) {
+        for (long mask : node.masks) {
+          if (!masks.contains(mask))
+            masks.add(mask);
+        }
+      }
+    }
+
+    /** The first uppercase character of the forms ending here, the earliest and the latest. */
+    int earliest() {
+      int e = lower ? MASK_LENGTH : Integer.MAX_VALUE;
+      for (long mask : masks) {
+        e = Math.min(e, Long.numberOfTrailingZeros(mask));
+      }
+      return Math.min(e, MASK_LENGTH);
+    }
+
+    int latest() {
+      int l = lower ? MASK_LENGTH : -1;
+      for (long mask : masks) {
+        l = Math.max(l, Long.numberOfTrailingZeros(mask));
+      }
+      return l;
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package ai.vitk.tok;
+
+import java.io.Serializable;
+import java.text.Normalizer;
+
+/**
+ * Normalizes the spelling of Vietnamese texts in one pass over their characters,
+ * using lookup tables instead of string replacements:
+ * <ul>
+ *   <li>the combining diacritics are composed with their letters (NFC);</li>
+ *   <li>the tone of the diphthongs oa, oe and uy is put on their second vowel,
+ *   e.g. "hòa" becomes "hoà";</li>
+ *   <li>a toned y after one of the consonants h, k, l, m, s, t becomes an i,
+ *   e.g. "kỹ" becomes "kĩ".</li>
+ * </ul>
+ * The normalized characters keep the offsets of the original characters,
+ * so that the original forms of the normalized words can be returned.
+ */
+final class TextNormalizer implements Serializable {
+  private static final long serialVersionUID = 1L;
+  /** The vowels of each tone, in the order of the tones. */
+  private static final String O = "òóỏõọ";
+  private static final String U = "ùúủũụ";
+  private static final String A = "àáảãạ";
+  private static final String E = "èéẻẽẹ";
+  private static final String Y = "ỳýỷỹỵ";
+  private static final String I = "ìíỉĩị";
+  private static final String CONSONANTS = "hklmst";
+
+  private static final byte TONED_O = 1;
+  private static final byte TONED_U = 2;
+  private static final byte TONED_Y = 3;
+  private static final byte CONSONANT = 4;
+  /** The kinds of the characters up to the Latin Extended Additional block. */
+  private static final byte[] KINDS = new byte[0x1F00];
+  /** The tones of the toned vowels, from 0. */
+  private static final byte[] TONES = new byte[0x1F00];
+
+  static {
+    for (int tone = 0; tone < O.length(); tone++) {
+      KINDS[O.charAt(tone)] = TONED_O;
+      KINDS[U.charAt(tone)] = TONED_U;
+      KINDS[Y.charAt(tone)] = TONED_Y;
+      TONES[O.charAt(tone)] = TONES[U.charAt(tone)] = TONES[Y.charAt(tone)] = (byte) tone;
+    }
+    for (int j = 0; j < CONSONANTS.length(); j++) {
+      KINDS[CONSONANTS.charAt(j)] = CONSONANT;
+    }
+  }
+
+  private static int kind(char c) {
+    return c < KINDS.length ? KINDS[c] : 0;
+  }
+
+  private static boolean isMark(char c) {
+    return c >= '\u0300' && Character.getType(c) == Character.NON_SPACING_MARK;
+  }
+
+  /**
+   * Normalizes a phrase.
+   *
+   * @param phrase a phrase
+   * @return the normalized phrase.
+   */
+  public String normalize(String phrase) {
+    Text text = text(phrase);
+    return text.normalized(0, text.length());
+  }
+
+  /**
+   * Normalizes a text, keeping its original form.
+   *
+   * @param text a text
+   * @return the composed and the normalized text.
+   */
+  public Text text(String text) {
+    int n = text.length();
+    char[] composed = null;
+    int[] offsets = null;
+    char[] normalized = new char[n];
+    int length = 0;
+    for (int i = 0; i < n; ) {
+      int next = i + 1;
+      if (next < n && isMark(text.charAt(next))) {
+        // a letter and its combining marks, usually composed to one character
+        while (next < n && isMark(text.charAt(next))) {
+          next++;
+        }
+        String cluster = Normalizer.normalize(text.substring(i, next), Normalizer.Form.NFC);
+        if (composed == null) {
+          composed = new char[n];
+          offsets = new int[n + 1];
+          text.getChars(0, length, composed, 0);
+          for (int j = 0; j < length; j++) {
+            offsets[j] = j;
+          }
+        }
+        for (int j = 0; j < cluster.length(); j++) {
+          composed[length] = normalized[length] = cluster.charAt(j);
+          offsets[length++] = i;
+        }
+      } else {
+        char c = text.charAt(i);
+        if (composed != null) {
+          composed[length] = c;
+          offsets[length] = i;
+        }
+        normalized[length++] = c;
+      }
+      i = next;
+    }
+    for (int j = 0; j < length; j++) {
+      char c = normalized[j];
+      switch (kind(c)) {
+        case TONED_O:
+          if (j + 1 < length && (normalized[j + 1] == 'a' || normalized[j + 1] == 'e')) {
+            normalized[j + 1] = (normalized[j + 1] == 'a' ? A : E).charAt(TONES[c]);
+            normalized[j++] = 'o';
+          }
+          break;
+        case TONED_U:
+          if (j + 1 < length && normalized[j + 1] == 'y') {
+            normalized[j + 1] = Y.charAt(TONES[c]);
+            normalized[j++] = 'u';
+          }
+          break;
+        case TONED_Y:
+          if (j > 0 && kind(normalized[j - 1]) == CONSONANT)
+            normalized[j] = I.charAt(TONES[c]);
+          break;
+        default:
+      }
+    }
+    if (composed == null)
+      return new Text(text, text, new String(normalized), null);
+    offsets[length] = n;
+    return new Text(text, new String(composed, 0, length), new String(normalized, 0, length), offsets);
+  }
+
+  /**
+   * A text in its original, composed and normalized forms, the last two having
+   * the same length.
+   */
+  static final class Text {
+    private final String original;
+    private final String composed;
+    private final String normalized;
+    /** The offsets of the composed characters in the original text, null if they are the same. */
+    private final int[] offsets;
+
+    Text(String original, String composed, String normalized, int[] offsets) {
+      this.original = original;
+      this.composed = composed;
+      this.normalized = normalized;
+      this.offsets = offsets;
+    }
+
+    /**
+     * @return the number of composed characters.
+     */
+    int length() {
+      return composed.length();
+    }
+
+    /**
+     * @return the text with its diacritics composed, which is matched by the patterns.
+     */
+    String composed() {
+      return composed;
+    }
+
+    /**
+     * @return the original text.
+     */
+    String original() {
+      return original;
+    }
+
+    /**
+     * Gets the offset of a composed character in the original text.
+     *
+     * @param index a composed character, or the length of the text.
+     * @return an offset in the original text.
+     */
+    int offset(int index) {
+      return offsets == null ? index : offsets[index];
+    }
+
+    /**
+     * Gets the original form of some composed characters.
+     *
+     * @param begin the first composed character.
+     * @param end the composed character after the last.
+     * @return a part of the original text.
+     */
+    String original(int begin, int end) {
+      if (offsets == null)
+        return original.substring(begin, end);
+      return original.substring(offsets[begin], offsets[end]);
+    }
+
+    /**
+     * Gets the normalized form of some composed characters.
+     *
+     * @param begin the first composed character.
+     * @param end the composed character after the last.
+     * @return a part of the normalized text.
+     */
+    String normalized(int begin, int end) {
+      return normalized.substring(begin, end);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package ai.vitk.tok;
+
+import java.util.Arrays;
+
+/**
+ * The tokens of a text by columns: the offsets of each token in the text and
+ * the code of its type, the lemma of the token as a {@link ai.vitk.type.Token}.
+ * The columns grow as needed and are kept when the spans are cleared, so that
+ * the same spans may be filled again and again without making objects for
+ * the tokens.
+ * <p>
+ * The codes of the types are those of the {@link PatternSet} which the spans are
+ * filled with, WORD being 0 in all the sets.
+ * <p>
+ * Spans are not shared by threads.
+ */
+public final class TokenSpans {
+  /** The code of the words of the phrases. */
+  public static final byte WORD = 0;
+  /** The patterns which typed the tokens. */
+  private PatternSet patterns = PatternSet.COMMON;
+
+  private int[] begins;
+  private int[] ends;
+  private byte[] types;
+  /** The offset in each token from which its white spaces are single spaces in its word. */
+  private int[] spaced;
+  private int size;
+
+  public TokenSpans() {
+    this(64);
+  }
+
+  /**
+   * Creates spans.
+   *
+   * @param capacity the number of tokens which the spans hold before growing.
+   */
+  public TokenSpans(int capacity) {
+    this.begins = new int[capacity];
+    this.ends = new int[capacity];
+    this.types = new byte[capacity];
+    this.spaced = new int[capacity];
+  }
+
+  /**
+   * @return the patterns which typed the tokens, whose codes they have.
+   */
+  public PatternSet patterns() {
+    return patterns;
+  }
+
+  /**
+   * @return the number of tokens.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param i a token
+   * @return the offset of the first character of the token in its text.
+   */
+  public int begin(int i) {
+    check(i);
+    return begins[i];
+  }
+
+  /**
+   * @param i a token
+   * @return the offset of the character after the last character of the token in its text.
+   */
+  public int end(int i) {
+    check(i);
+    return ends[i];
+  }
+
+  /**
+   * @param i a token
+   * @return the code of the type of the token.
+   */
+  public byte type(int i) {
+    check(i);
+    return types[i];
+  }
+
+  /**
+   * @param i a token
+   * @return the name of the type of the token, as the lemma of a {@link ai.vitk.type.Token}.
+   */
+  public String typeName(int i) {
+    return patterns.typeName(type(i));
+  }
+
+  /**
+   * Gets the word of a token, as the word of a {@link ai.vitk.type.Token}.
+   *
+   * @param i a token
+   * @param text the text of the tokens
+   * @return a word.
+   */
+  public String word(int i, String text) {
+    check(i);
+    if (spaced[i] >= ends[i])
+      return text.substring(begins[i], ends[i]);
+    StringBuilder word = new StringBuilder(text.substring(begins[i], spaced[i]));
+    int j = spaced[i];
+    while (j < ends[i]) {
+      if (PatternScanner.isSpace(text.charAt(j))) {
+        word.append(' ');
+        while (PatternScanner.isSpace(text.charAt(j)))
+          j++;
+      } else word.append(text.charAt(j++));
+    }
+    return word.toString();
+  }
+
+  /**
+   * Removes all the tokens, the columns being kept.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Removes all the tokens, the tokens to come being typed by some patterns.
+   */
+  void clear(PatternSet patterns) {
+    this.patterns = patterns;
+    size = 0;
+  }
+
+  /**
+   * Adds a token.
+   *
+   * @param begin the offset of its first character.
+   * @param end the offset of the character after the last.
+   * @param type the code of its type.
+   * @param spaced the offset from which its white spaces are single spaces in its word.
+   */
+  void add(int begin, int end, byte type, int spaced) {
+    if (size == begins.length)
+      grow(size + 1);
+    begins[size] = begin;
+    ends[size] = end;
+    types[size] = type;
+    this.spaced[size] = spaced;
+    size++;
+  }
+
+  int spaced(int i) {
+    return spaced[i];
+  }
+
+  /**
+   * Joins a token with the next one, which is removed; the characters between
+   * the two tokens must be white spaces, which the word reads as one space.
+   */
+  void join(int i) {
+    spaced[i] = Math.min(spaced[i], ends[i]);
+    ends[i] = ends[i + 1];
+    remove(i + 1, 1);
+  }
+
+  /**
+   * Splits a token in two, the first one being a word.
+   *
+   * @param i a token
+   * @param end the end of the first token.
+   * @param begin the beginning of the second token.
+   */
+  void split(int i, int end, int begin) {
+    if (size == begins.length)
+      grow(size + 1);
+    System.arraycopy(begins, i + 1, begins, i + 2, size - i - 1);
+    System.arraycopy(ends, i + 1, ends, i + 2, size - i - 1);
+    System.arraycopy(types, i + 1, types, i + 2, size - i - 1);
+    System.arraycopy(spaced, i + 1, spaced, i + 2, size - i - 1);
+    size++;
+    begins[i + 1] = begin;
+    ends[i + 1] = ends[i];
+    types[i + 1] = types[i];
+    spaced[i + 1] = Math.max(spaced[i], begin);
+    ends[i] = end;
+    types[i] = WORD;
+    spaced[i] = Math.min(spaced[i], end);
+  }
+
+  private void remove(int i, int n) {
+    System.arraycopy(begins, i + n, begins, i, size - i - n);
+    System.arraycopy(ends, i + n, ends, i, size - i - n);
+    System.arraycopy(types, i + n, types, i, size - i - n);
+    System.arraycopy(spaced, i + n, spaced, i, size - i - n);
+    size -= n;
+  }
+
+  private void grow(int capacity) {
+    int n = Math.max(capacity, 2 * begins.length);
+    begins = Arrays.copyOf(begins, n);
+    ends = Arrays.copyOf(ends, n);
+    types = Arrays.copyOf(types, n);
+    spaced = Arrays.copyOf(spaced, n);
+  }
+
+  private void check(int i) {
+    if (i < 0 || i >= size)
+      throw new IndexOutOfBoundsException(String.valueOf(i));
+  }
+}
@@ -10,6 +10,7 @@ import java.nio.file.Paths;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -21,13 +22,69 @@ import java.util.stream.Collectors;
 public class Tokenizer implements Serializable {
   
   private final RegExpTokenizer regExpTokenizer; 
+  /**
+   * The dictionary used to merge names with the following words.
+   */
+  private final Dictionary dictionary;
   
   public Tokenizer() {
     this.regExpTokenizer = new RegExpTokenizer();
+    this.dictionary = Lexicons.get(Lexicons.CORE, Lexicons.VCM);
   }
 
+  /**
+   * Creates a default tokenizer once its lexicons are loaded in the background.
+   * The future may be used as a readiness signal, e.g. by a health check.
+   *
+   * @return the future tokenizer.
+   */
+  public static CompletableFuture<Tokenizer> loadAsync() {
+    return DefaultDictionary.loadAsync()
+        .thenCombine(Lexicons.loadAsync(Lexicons.CORE, Lexicons.VCM), (graph, merging) -> new Tokenizer());
+  }
+
+  /**
+   * Creates a tokenizer which uses a given dictionary, both for segmenting
+   * phrases and for merging names with the following words.
+   * @param dictionary a dictionary
+   */
   public Tokenizer(Dictionary dictionary) {
     this.regExpTokenizer = new RegExpTokenizer(dictionary);
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * Creates a tokenizer which matches some patterns instead of the common ones,
+   * e.g. only those a deployment needs.
+   * @param patternSet a set of patterns
+   */
+  public Tokenizer(PatternSet patternSet) {
+    this.regExpTokenizer = new RegExpTokenizer(patternSet);
+    this.dictionary = Lexicons.get(Lexicons.CORE, Lexicons.VCM);
+  }
+
+  /**
+   * Creates a tokenizer which uses a given dictionary and matches some patterns
+   * instead of the common ones.
+   * @param dictionary a dictionary
+   * @param patternSet a set of patterns
+   */
+  public Tokenizer(Dictionary dictionary, PatternSet patternSet) {
+    this.regExpTokenizer = new RegExpTokenizer(dictionary, patternSet);
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * Gets the statistics of the dictionaries of the tokenizer, the one segmenting
+   * the phrases and the one merging the names, added up if they differ.
+   *
+   * @return statistics, or <code>null</code> if a dictionary cannot tell.
+   */
+  public DictionaryStatistics statistics() {
+    Dictionary segmenting = regExpTokenizer.dictionary();
+    if (segmenting == dictionary)
+      return dictionary.statistics();
+    return DictionaryStatistics.sum(segmenting.statistics(), dictionary.statistics());
   }
 
   /**
@@ -37,28 +94,49 @@ public class Tokenizer implements Serializable {
    */
   public List<List<Token>> iterate(String text) {
     List<List<Token>> candidates = regExpTokenizer.iterate(text);
-    return candidates.stream().map(candidate -> split(merge(candidate))).collect(Collectors.toList());
+    return candidates.stream().map(candidate -> split(merge(candidate, text), text)).collect(Collectors.toList());
   }
   
   /**
    * Segments a text into tokens.
    * @param text a raw text.
-   * @return a list of tokens.
+   * @return a list of tokens, with their offsets in the text.
    */
   public List<Token> tokenize(String text) {
     List<Token> tokens = regExpTokenizer.tokenize(text);
-    return split(merge(tokens));
+    return split(merge(tokens, text), text);
+  }
+
+  /**
+   * Segments a text into tokens, filling some spans instead of making the tokens,
+   * so that a text is tokenized without making objects for its tokens when the
+   * spans are used again. The spans are cleared first.
+   * @param text a raw text.
+   * @param spans the spans of the tokens, as those of {@link #tokenize(String)}
+   * @return the spans.
+   */
+  public TokenSpans tokenize(String text, TokenSpans spans) {
+    regExpTokenizer.tokenize(text, spans);
+    merge(spans, text);
+    split(spans, text);
+    return spans;
   }
 
   /**
    * Splits one token into two by using the prefix, for example ["Ông Phương"] => ["Ông", "Phương"];
    * however, pay attention to case like ["Xã hội"], where the second syllable starts with a lowercase.
    * @param tokens
+   * @param text the text of the tokens
    * @return a list of tokens
    */
-  private List<Token> split(List<Token> tokens) {
+  private List<Token> split(List<Token> tokens, String text) {
     List<Token> result = new LinkedList<>();
     for (Token token: tokens) {
+      // a word without white space is not read
+      if (token.getBegin() >= 0 && !hasSpace(text, token.getBegin(), token.getEnd())) {
+        result.add(token);
+        continue;
+      }
       String word = token.getWord();
       int j = word.indexOf(' ');
       if (j > 0) {
@@ -67,6 +145,14 @@ public class Tokenizer implements Serializable {
         if (Prefixes.all.contains(prefix.toLowerCase()) && rest.length() > 0 && Character.isUpperCase(rest.charAt(0))) {
           Token t1 = new Token(token.getId(), prefix).setLemma("WORD");
           Token t2 = new Token(token.getId(), word.substring(j+1)).setLemma(token.getLemma());
+          if (token.getBegin() >= 0) {
+            // the prefix is the first syllable, the rest goes on after the white spaces
+            int k = token.getBegin() + j;
+            while (k < token.getEnd() && text.charAt(k) <= ' ')
+              k++;
+            t1.setOffsets(token.getBegin(), token.getBegin() + j);
+            t2.setOffsets(k, token.getEnd());
+          }
           result.add(t1);
           result.add(t2);
         } else {
@@ -82,6 +168,59 @@ public class Tokenizer implements Serializable {
     return result;
   }
 
+  /**
+   * Splits the spans of some tokens as {@link #split(List, String)} does.
+   */
+  private void split(TokenSpans spans, String text) {
+    for (int i = 0; i < spans.size(); i++) {
+      final int begin = spans.begin(i);
+      final int end = spans.end(i);
+      final int spaced = spans.spaced(i);
+      if (!hasSpace(text, begin, end))
+        continue;
+      // the first space of the word
+      int j = begin;
+      while (j < end && !(j < spaced ? text.charAt(j) == ' ' : PatternScanner.isSpace(text.charAt(j))))
+        j++;
+      if (j == begin || j == end)
+        continue;
+      // the first character of the rest
+      int r = j + 1;
+      if (j >= spaced) {
+        while (r < end && PatternScanner.isSpace(text.charAt(r)))
+          r++;
+      }
+      if (r < end && Character.isUpperCase(text.charAt(r)) && Prefixes.all.contains(text.substring(begin, j).toLowerCase())) {
+        int k = j;
+        while (k < end && text.charAt(k) <= ' ')
+          k++;
+        spans.split(i, j, k);
+        i++;
+      }
+    }
+  }
+
+  private static boolean hasSpace(String text, int begin, int end) {
+    for (int j = begin; j < end; j++) {
+      if (text.charAt(j) <= ' ')
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Tells whether the characters between two tokens are white spaces, one at least.
+   */
+  private static boolean isSpaced(String text, int end, int begin) {
+    if (begin <= end)
+      return false;
+    for (int j = end; j < begin; j++) {
+      if (!PatternScanner.isSpace(text.charAt(j)))
+        return false;
+    }
+    return true;
+  }
+
   private boolean canMerge(Token token) {
     return token.getLemma().equals("NAME") || token.getLemma().equals("CAPITAL");
   }
@@ -89,15 +228,16 @@ public class Tokenizer implements Serializable {
   /**
    * Merge two consecutive tokens, for example ["Thủ", "tướng"] => ["Thủ tướng"].  
    * @param tokens
+   * @param text the text of the tokens
    * @return a list of tokens
    */
-  private List<Token> merge(List<Token> tokens) {
+  private List<Token> merge(List<Token> tokens, String text) {
     List<Token> result = tokens;
     int n = result.size();
     for (int i = n-2; i >= 0; i--)
       if (canMerge(result.get(i))) {
         List<Token> left = result.subList(0, i);
-        List<Token> right = merge(result, i);
+        List<Token> right = merge(result, i, text);
         result = left;
         result.addAll(right);
       }
@@ -107,7 +247,28 @@ public class Tokenizer implements Serializable {
     return result;
   }
 
-  private List<Token> merge(List<Token> tokens, int i) {
+  /**
+   * Merges the spans of some tokens as {@link #merge(List, String)} does.
+   */
+  private void merge(TokenSpans spans, String text) {
+    final byte name = spans.patterns().typeCode("NAME");
+    final byte capital = spans.patterns().typeCode("CAPITAL");
+    for (int i = spans.size() - 2; i >= 0; i--) {
+      final byte type = spans.type(i);
+      if ((type == name || type == capital) && spans.type(i + 1) == TokenSpans.WORD
+          && isSpaced(text, spans.end(i), spans.begin(i + 1))) {
+        final int begin = spans.begin(i);
+        final int end = spans.end(i);
+        final int j = text.lastIndexOf(' ', end - 1);
+        // the second token is a lowercase word
+        final String s = text.substring(j > begin ? j + 1 : begin, end) + ' ' + spans.word(i + 1, text);
+        if (dictionary.hasLowerCaseWord(s))
+          spans.join(i);
+      }
+    }
+  }
+
+  private List<Token> merge(List<Token> tokens, int i, String text) {
     if (i > tokens.size() - 1)
       return new LinkedList<>();
     boolean yes = false;
@@ -116,14 +277,16 @@ public class Tokenizer implements Serializable {
     if (canMerge(first)) {
       if (i < tokens.size() - 1) {
         Token second = tokens.get(i + 1);
-        if (second.getLemma().equals("WORD")) {
+        // a part left out between the tokens is not dropped from the word
+        if (second.getLemma().equals("WORD") && (first.getBegin() < 0 || isSpaced(text, first.getEnd(), second.getBegin()))) {
           String s = w;
           int j = w.lastIndexOf(' ');
           if (j > 0) {
             s = w.substring(j + 1);
           }
-          s = s.toLowerCase() + ' ' + second.getWord();
-          if (Lexicon.INSTANCE.hasWord(s)) {
+          // the second token is a lowercase word
+          s = s + ' ' + second.getWord();
+          if (dictionary.hasLowerCaseWord(s)) {
             yes = true;
             w = w + ' ' + second.getWord();
           }
@@ -131,7 +294,8 @@ public class Tokenizer implements Serializable {
       }
     }
     List<Token> result = new LinkedList<>();
-    result.add(new Token("" + i, w).setLemma(first.getLemma()));
+    result.add(new Token("" + i, w).setLemma(first.getLemma())
+        .setOffsets(first.getBegin(), yes ? tokens.get(i + 1).getEnd() : first.getEnd()));
     if (yes) {
       result.addAll(tokens.subList(i+2, tokens.size()));
     } else {
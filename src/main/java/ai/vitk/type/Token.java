@@ -7,12 +7,17 @@ import java.util.TreeMap;
 /**
  * Created by phuonglh on 2/16/17.
  * <p>
- *   A token.
+ *   A token. A token of a text may know its offsets in the text, and may take
+ *   its word from the text only when the word is first asked.
  * </p>
  */
 public class Token {
   private String id;
   private String word;
+  /** The text whose characters are the word of the token, or null. */
+  private String text;
+  private int begin = -1;
+  private int end = -1;
   private Map<Annotation, String> annotation;
 
   public Token(String id, String word) {
@@ -21,6 +26,21 @@ public class Token {
     this.annotation = new TreeMap<>();
   }
 
+  /**
+   * Creates a token of some characters of a text, its word being these characters.
+   * @param id an id
+   * @param text a text
+   * @param begin the offset of the first character of the token in the text.
+   * @param end the offset of the character after the last.
+   */
+  public Token(String id, String text, int begin, int end) {
+    this.id = id;
+    this.text = text;
+    this.begin = begin;
+    this.end = end;
+    this.annotation = new TreeMap<>();
+  }
+
   public String getId() {
     return id;
   }
@@ -30,9 +50,39 @@ public class Token {
   }
 
   public String getWord() {
+    if (word == null && text != null)
+      word = text.substring(begin, end);
     return word;
   }
 
+  /**
+   * @return the offset of the first character of the token in its text, or -1 if it is not known.
+   */
+  public int getBegin() {
+    return begin;
+  }
+
+  /**
+   * @return the offset of the character after the last character of the token
+   * in its text, or -1 if it is not known.
+   */
+  public int getEnd() {
+    return end;
+  }
+
+  /**
+   * Sets the offsets of the token in its text, the characters there being the
+   * word of the token up to its white spaces.
+   * @param begin the offset of the first character of the token.
+   * @param end the offset of the character after the last.
+   * @return this token.
+   */
+  public Token setOffsets(int begin, int end) {
+    this.begin = begin;
+    this.end = end;
+    return this;
+  }
+
   public Map<Annotation, String> getAnnotation() {
     return annotation;
   }
@@ -106,7 +156,7 @@ public class Token {
     sb.append('[');
     sb.append(id);
     sb.append(';');
-    sb.append(word.replaceAll("\\s+", "_"));
+    sb.append(getWord().replaceAll("\\s+", "_"));
     if (!annotation.isEmpty()) {
       sb.append(';');
       sb.append(annotation);
@@ -125,6 +175,9 @@ public class Token {
       map.put(a, annotation.get(a));
     }
     Token t = new Token(id, word);
+    t.text = text;
+    t.begin = begin;
+    t.end = end;
     t.annotation = map;
     return t;
   }
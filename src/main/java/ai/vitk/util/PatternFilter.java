@@ -0,0 +1,506 @@
+package ai.vitk.util;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A table telling, for each character, the patterns of a list whose matches may
+ * start with it and the patterns whose matches must contain one character of
+ * a set to which it belongs. A pattern needs to be tried only at the positions
+ * where it may start, and only over the parts of a text which contain one of its
+ * required characters: a date needs a digit, an email an '@', a name an uppercase
+ * letter.
+ * <p>
+ * The sets are found from the syntax of the regular expressions, the character
+ * classes and escapes being evaluated by {@link Pattern} itself, and are always
+ * large enough: the zero-width assertions are skipped, and a construct which
+ * is not understood may start with any character and requires nothing. The
+ * table covers the characters up to the general punctuation and the currency
+ * symbols; any other character may start any pattern and is required by all.
+ * Only the first 64 patterns of a list are filtered, one bit each.
+ * <p>
+ * The syntax also tells how many characters before a position a pattern may read
+ * when it tries to match there, by its lookbehinds and word boundaries.
+ */
+public final class PatternFilter {
+  /** The characters covered by the table. */
+  public static final int SIZE = 0x2100;
+  /** The characters of the table, each at its own position. */
+  private static final String CHARACTERS;
+  private static final BitSet ALL = new BitSet(SIZE);
+  /** The patterns which may start with each character, one bit per pattern. */
+  private final long[] starts = new long[SIZE];
+  /** The patterns requiring each character. */
+  private final long[] required = new long[SIZE];
+  /** The patterns which require no character. */
+  private final long free;
+  /** The patterns which may match no character. */
+  private final long empty;
+  /** The number of characters before a match which each pattern may read. */
+  private final int[] behind;
+
+  static {
+    char[] characters = new char[SIZE];
+    for (int c = 0; c < SIZE; c++) {
+      characters[c] = (char) c;
+    }
+    CHARACTERS = new String(characters);
+    ALL.set(0, SIZE);
+  }
+
+  /**
+   * Creates the filter of a list of patterns.
+   *
+   * @param patterns some patterns.
+   */
+  public PatternFilter(List<ai.vitk.type.Pattern> patterns) {
+    long f = 0;
+    long n = 0;
+    Map<String, BitSet> sets = new HashMap<>();
+    this.behind = new int[patterns.size()];
+    for (int q = 0; q < patterns.size(); q++) {
+      Syntax syntax = null;
+      Pattern pattern = patterns.get(q).getPattern();
+      if (pattern.flags() == 0) {
+        try {
+          syntax = new Parser(pattern.pattern(), sets).parse();
+        } catch (IllegalArgumentException e) {
+          // an unknown construct
+        }
+      }
+      behind[q] = syntax != null ? syntax.behind : behind(pattern.pattern());
+      if (q >= Long.SIZE)
+        continue;
+      long bit = 1L << q;
+      if (syntax == null || syntax.nullable || syntax.first == null)
+        mark(starts, bit, ALL);
+      else mark(starts, bit, syntax.first);
+      if (syntax != null && syntax.required != null)
+        mark(required, bit, syntax.required);
+      if (syntax == null || syntax.required == null)
+        f |= bit;
+      if (syntax == null || syntax.nullable)
+        n |= bit;
+    }
+    this.free = f;
+    this.empty = n;
+  }
+
+  /**
+   * Bounds the characters read before a match by a pattern whose syntax is unknown.
+   */
+  private static int behind(String regex) {
+    if (regex.contains("(?<=") || regex.contains("(?<!"))
+      return Integer.MAX_VALUE;
+    return regex.contains("\\b") || regex.contains("\\B") ? 1 : 0;
+  }
+
+  private static void mark(long[] table, long bit, BitSet set) {
+    for (int c = set.nextSetBit(0); c >= 0 && c < SIZE; c = set.nextSetBit(c + 1)) {
+      table[c] |= bit;
+    }
+  }
+
+  /**
+   * Gets the patterns which may start with a character.
+   *
+   * @param c a character
+   * @return a bit for each pattern, in the order of the list.
+   */
+  public long starts(char c) {
+    return c >= SIZE ? -1L : starts[c];
+  }
+
+  /**
+   * Gets the patterns of which a character is a required character.
+   *
+   * @param c a character
+   * @return a bit for each pattern.
+   */
+  public long requires(char c) {
+    return c >= SIZE ? -1L : required[c];
+  }
+
+  /**
+   * @return the patterns which require no character, a bit for each pattern.
+   */
+  public long free() {
+    return free;
+  }
+
+  /**
+   * @return the patterns which may match no character, a bit for each pattern.
+   */
+  public long empty() {
+    return empty;
+  }
+
+  /**
+   * Tells whether a match of a pattern may start with a character.
+   */
+  public boolean mayStart(int q, char c) {
+    return q >= Long.SIZE || c >= SIZE || (starts[c] & 1L << q) != 0;
+  }
+
+  /**
+   * Tells whether a pattern may match no character, at the end of a text as well.
+   */
+  public boolean mayBeEmpty(int q) {
+    return q >= Long.SIZE || (empty & 1L << q) != 0;
+  }
+
+  /**
+   * Tells whether a pattern requires no character.
+   */
+  public boolean isFree(int q) {
+    return q >= Long.SIZE || (free & 1L << q) != 0;
+  }
+
+  /**
+   * Tells whether a character is one of the required characters of a pattern.
+   */
+  public boolean isRequired(int q, char c) {
+    return c >= SIZE || (required[c] & 1L << q) != 0;
+  }
+
+  /**
+   * Gets the number of characters before a position which a pattern may read when
+   * it tries to match there, by its lookbehinds and word boundaries; a word boundary
+   * also reads the combining marks before the character it looks at.
+   *
+   * @param q the index of a pattern.
+   * @return a number of characters, {@link Integer#MAX_VALUE} if not bounded.
+   */
+  public int behind(int q) {
+    return behind[q];
+  }
+
+  /**
+   * The characters which may start a part of a regular expression, whether the part
+   * may match no character, and characters of which its matches contain one; with
+   * the length of its longest matches and the number of characters before its
+   * start which it may read, {@link Integer#MAX_VALUE} if not bounded.
+   */
+  private static final class Syntax {
+    /** The characters which may start the part, null if any. */
+    final BitSet first;
+    final boolean nullable;
+    /** The required characters, null if none is known. */
+    final BitSet required;
+    final int longest;
+    final int behind;
+
+    Syntax(BitSet first, boolean nullable, BitSet required, int longest, int behind) {
+      this.first = first;
+      this.nullable = nullable;
+      this.required = nullable ? null : required;
+      this.longest = longest;
+      this.behind = behind;
+    }
+
+    static final Syntax EMPTY = new Syntax(new BitSet(), true, null, 0, 0);
+    /** A character, or the two halves of a supplementary character. */
+    static final Syntax ANY = new Syntax(null, false, null, 2, 0);
+
+    static Syntax of(BitSet set) {
+      return new Syntax(set, false, set, 2, 0);
+    }
+
+    static Syntax of(char c) {
+      BitSet set = new BitSet(SIZE);
+      if (c < SIZE)
+        set.set(c);
+      return new Syntax(set, false, set, 1, 0);
+    }
+
+    /**
+     * Makes an assertion which reads some characters before its position.
+     */
+    static Syntax behind(int behind) {
+      return new Syntax(new BitSet(), true, null, 0, behind);
+    }
+
+    Syntax then(Syntax next) {
+      BitSet f = first;
+      if (nullable)
+        f = union(first, next.first);
+      BitSet r = required;
+      if (r == null || (next.required != null && next.required.cardinality() < r.cardinality()))
+        r = next.required;
+      // the next part starts after the start of this one
+      return new Syntax(f, nullable && next.nullable, r, add(longest, next.longest), Math.max(behind, next.behind));
+    }
+
+    Syntax or(Syntax other) {
+      BitSet r = required != null && other.required != null ? union(required, other.required) : null;
+      return new Syntax(union(first, other.first), nullable || other.nullable, r,
+          Math.max(longest, other.longest), Math.max(behind, other.behind));
+    }
+
+    /**
+     * Repeats the part.
+     *
+     * @param min the least number of times.
+     * @param max the most, {@link Integer#MAX_VALUE} if not bounded.
+     */
+    Syntax repeat(int min, int max) {
+      int l = longest == 0 || max == 0 ? 0 : max == Integer.MAX_VALUE ? max : multiply(longest, max);
+      return new Syntax(first, nullable || min == 0, min == 0 ? null : required, l, behind);
+    }
+
+    static int add(int a, int b) {
+      return (int) Math.min(Integer.MAX_VALUE, (long) a + b);
+    }
+
+    private static int multiply(int a, int b) {
+      return (int) Math.min(Integer.MAX_VALUE, (long) a * b);
+    }
+
+    private static BitSet union(BitSet a, BitSet b) {
+      if (a == null || b == null)
+        return null;
+      BitSet u = (BitSet) a.clone();
+      u.or(b);
+      return u;
+    }
+  }
+
+  /**
+   * Walks through a regular expression, throwing an {@link IllegalArgumentException}
+   * at the constructs it does not know.
+   */
+  private static final class Parser {
+    private final String regex;
+    private final Map<String, BitSet> sets;
+    private int position;
+
+    Parser(String regex, Map<String, BitSet> sets) {
+      this.regex = regex;
+      this.sets = sets;
+    }
+
+    Syntax parse() {
+      Syntax syntax = alternation();
+      if (position < regex.length())
+        throw new IllegalArgumentException("Unbalanced group at " + position);
+      return syntax;
+    }
+
+    private boolean more() {
+      return position < regex.length();
+    }
+
+    private char peek() {
+      return regex.charAt(position);
+    }
+
+    private Syntax alternation() {
+      Syntax syntax = sequence();
+      while (more() && peek() == '|') {
+        position++;
+        syntax = syntax.or(sequence());
+      }
+      return syntax;
+    }
+
+    private Syntax sequence() {
+      Syntax syntax = Syntax.EMPTY;
+      while (more() && peek() != '|' && peek() != ')') {
+        syntax = syntax.then(quantified(atom()));
+      }
+      return syntax;
+    }
+
+    private Syntax quantified(Syntax atom) {
+      while (more()) {
+        char c = peek();
+        int min;
+        int max = Integer.MAX_VALUE;
+        if (c == '?' || c == '*') {
+          min = 0;
+          if (c == '?')
+            max = 1;
+          position++;
+        } else if (c == '+') {
+          min = 1;
+          position++;
+        } else if (c == '{') {
+          int end = regex.indexOf('}', position);
+          if (end < 0)
+            throw new IllegalArgumentException("Bad repetition at " + position);
+          String[] bounds = regex.substring(position + 1, end).split(",", -1);
+          min = Integer.parseInt(bounds[0].trim());
+          if (bounds.length == 1)
+            max = min;
+          else if (!bounds[1].trim().isEmpty())
+            max = Integer.parseInt(bounds[1].trim());
+          position = end + 1;
+        } else break;
+        // a lazy or possessive quantifier
+        if (more() && (peek() == '?' || peek() == '+'))
+          position++;
+        atom = atom.repeat(min, max);
+      }
+      return atom;
+    }
+
+    private Syntax atom() {
+      char c = peek();
+      switch (c) {
+        case '(':
+          return group();
+        case '[':
+          return Syntax.of(set(regex.substring(position, position = classEnd(position))));
+        case '.':
+          position++;
+          return Syntax.ANY;
+        case '^':
+        case '$':
+          position++;
+          return Syntax.EMPTY;
+        case '\\':
+          return escape();
+        default:
+          position++;
+          return Syntax.of(c);
+      }
+    }
+
+    private Syntax group() {
+      position++;
+      boolean zeroWidth = false;
+      boolean lookbehind = false;
+      if (regex.startsWith("?", position)) {
+        if (regex.startsWith("?:", position) || regex.startsWith("?>", position)) {
+          position += 2;
+        } else if (regex.startsWith("?=", position) || regex.startsWith("?!", position)) {
+          position += 2;
+          zeroWidth = true;
+        } else if (regex.startsWith("?<=", position) || regex.startsWith("?<!", position)) {
+          position += 3;
+          zeroWidth = lookbehind = true;
+        } else if (regex.startsWith("?<", position)) {
+          position = regex.indexOf('>', position) + 1;
+          if (position == 0)
+            throw new IllegalArgumentException("Bad group name");
+        } else throw new IllegalArgumentException("Inline flags at " + position);
+      }
+      Syntax syntax = alternation();
+      if (!more() || peek() != ')')
+        throw new IllegalArgumentException("Unclosed group at " + position);
+      position++;
+      // a lookbehind starts at most its longest match before the position
+      if (lookbehind)
+        return Syntax.behind(Syntax.add(syntax.longest, syntax.behind));
+      return zeroWidth ? Syntax.behind(syntax.behind) : syntax;
+    }
+
+    /**
+     * Finds the end of a character class, nested classes included.
+     */
+    private int classEnd(int start) {
+      int depth = 0;
+      int j = start;
+      while (j < regex.length()) {
+        char c = regex.charAt(j);
+        if (c == '\\') {
+          j += regex.startsWith("Q", j + 1) ? regex.indexOf("\\E", j) + 2 : 2;
+          if (j < 2)
+            throw new IllegalArgumentException("Unclosed quote");
+          continue;
+        }
+        if (c == '[') {
+          depth++;
+          j++;
+          // a bracket first in a class is a character
+          if (j < regex.length() && regex.charAt(j) == '^')
+            j++;
+          if (j < regex.length() && regex.charAt(j) == ']')
+            j++;
+          continue;
+        }
+        j++;
+        if (c == ']' && --depth == 0)
+          return j;
+      }
+      throw new IllegalArgumentException("Unclosed class at " + start);
+    }
+
+    private Syntax escape() {
+      if (position + 1 >= regex.length())
+        throw new IllegalArgumentException("Trailing escape");
+      char c = regex.charAt(position + 1);
+      int start = position;
+      position += 2;
+      switch (c) {
+        case 'b':
+        case 'B':
+          return Syntax.behind(1);
+        case 'A':
+        case 'z':
+        case 'Z':
+        case 'G':
+          return Syntax.EMPTY;
+        case 'p':
+        case 'P':
+          if (more() && peek() == '{') {
+            position = regex.indexOf('}', position) + 1;
+            if (position == 0)
+              throw new IllegalArgumentException("Unclosed property");
+          } else position++;
+          return Syntax.of(set(regex.substring(start, position)));
+        case 'x':
+          if (more() && peek() == '{') {
+            position = regex.indexOf('}', position) + 1;
+            if (position == 0)
+              throw new IllegalArgumentException("Unclosed code point");
+          } else position += 2;
+          return Syntax.of(set(regex.substring(start, position)));
+        case 'u':
+          position += 4;
+          return Syntax.of(set(regex.substring(start, position)));
+        case 'c':
+          position++;
+          return Syntax.of(set(regex.substring(start, position)));
+        case 'Q': {
+          int end = regex.indexOf("\\E", position);
+          String quoted = regex.substring(position, end < 0 ? regex.length() : end);
+          position = end < 0 ? regex.length() : end + 2;
+          Syntax syntax = Syntax.EMPTY;
+          for (int j = 0; j < quoted.length(); j++) {
+            syntax = syntax.then(Syntax.of(quoted.charAt(j)));
+          }
+          return syntax;
+        }
+        case 'R':
+        case 'X':
+        case 'k':
+          throw new IllegalArgumentException("Unknown escape \\" + c);
+        default:
+          if (c >= '0' && c <= '9')
+            throw new IllegalArgumentException("Back reference or octal escape");
+          return Syntax.of(set(regex.substring(start, position)));
+      }
+    }
+
+    /**
+     * Gets the characters of the table matched by a regular expression of one character.
+     */
+    private BitSet set(String expression) {
+      BitSet set = sets.get(expression);
+      if (set == null) {
+        set = new BitSet(SIZE);
+        Matcher matcher = Pattern.compile(expression).matcher(CHARACTERS);
+        while (matcher.find()) {
+          set.set(matcher.start());
+        }
+        sets.put(expression, set);
+      }
+      return set;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package ai.vitk.util;
+
+import ai.vitk.type.Pattern;
+import ai.vitk.type.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+
+/**
+ * Finds the shapes of tokens: the name of the first pattern of a list which
+ * matches a whole token, PHRASE excepted, or an empty string.
+ * <p>
+ * A token is read once for its signature, the patterns which it may match: those
+ * which may start with its first character and whose required characters it has,
+ * as told by a {@link PatternFilter}. Only these patterns are run, each thread
+ * keeping its matchers. The shapes of the tokens may also be kept in a bounded
+ * cache shared by the threads, made like the cache of the syllables: a fixed array
+ * of slots, two for each hash, read and written without locks.
+ */
+public final class ShapeClassifier {
+  private final Pattern[] patterns;
+  private final PatternFilter filter;
+  /** The patterns which are never tried, PHRASE. */
+  private final boolean[] skipped;
+  private final ThreadLocal<Matcher[]> matchers;
+  /** The slots of the cache, null if there is no cache. */
+  private final AtomicReferenceArray<Entry> cache;
+  private final int mask;
+
+  /**
+   * Creates a classifier without a cache.
+   *
+   * @param patterns the patterns, in the order they are tried.
+   */
+  public ShapeClassifier(List<Pattern> patterns) {
+    this(patterns, 0);
+  }
+
+  /**
+   * Creates a classifier.
+   *
+   * @param patterns the patterns, in the order they are tried.
+   * @param cacheCapacity the maximal number of shapes kept, rounded up to a power
+   *                      of two, or 0 for no cache.
+   */
+  public ShapeClassifier(List<Pattern> patterns, int cacheCapacity) {
+    if (cacheCapacity < 0 || cacheCapacity > 1 << 30)
+      throw new IllegalArgumentException("Invalid capacity: " + cacheCapacity);
+    this.patterns = patterns.toArray(new Pattern[0]);
+    this.filter = new PatternFilter(patterns);
+    this.skipped = new boolean[this.patterns.length];
+    for (int q = 0; q < skipped.length; q++) {
+      skipped[q] = this.patterns[q].getName().equals("PHRASE");
+    }
+    this.matchers = ThreadLocal.withInitial(() -> new Matcher[this.patterns.length]);
+    if (cacheCapacity == 0) {
+      this.cache = null;
+      this.mask = 0;
+    } else {
+      int size = Math.max(2, Integer.highestOneBit(Math.max(cacheCapacity - 1, 1)) << 1);
+      this.cache = new AtomicReferenceArray<>(size);
+      this.mask = size - 1;
+    }
+  }
+
+  /**
+   * Finds the shape of a token.
+   *
+   * @param token a token
+   * @return the name of a pattern, or an empty string if the token has no particular shape.
+   */
+  public String shape(String token) {
+    return shape(token, matchers.get());
+  }
+
+  /**
+   * Finds the shapes of some tokens, from their words.
+   *
+   * @param tokens some tokens
+   * @return the shape of each token, in the order of the tokens.
+   */
+  public List<String> shapes(List<Token> tokens) {
+    final Matcher[] ms = matchers.get();
+    final List<String> shapes = new ArrayList<>(tokens.size());
+    for (Token token : tokens) {
+      shapes.add(shape(token.getWord(), ms));
+    }
+    return shapes;
+  }
+
+  private String shape(String token, Matcher[] ms) {
+    if (cache == null)
+      return classify(token, ms);
+    final int h = token.hashCode();
+    final int slot = (h ^ h >>> 16) & mask & ~1;
+    final Entry first = cache.get(slot);
+    if (first != null && first.token.equals(token))
+      return first.shape;
+    final Entry second = cache.get(slot + 1);
+    if (second != null && second.token.equals(token))
+      return second.shape;
+    final String shape = classify(token, ms);
+    // the older shape is replaced
+    cache.lazySet(slot + 1, first);
+    cache.lazySet(slot, new Entry(token, shape));
+    return shape;
+  }
+
+  private String classify(String token, Matcher[] ms) {
+    long candidates;
+    if (token.isEmpty()) {
+      candidates = filter.empty();
+    } else {
+      long required = filter.free();
+      for (int j = 0; j < token.length(); j++) {
+        required |= filter.requires(token.charAt(j));
+      }
+      candidates = filter.starts(token.charAt(0)) & required;
+    }
+    for (int q = 0; q < patterns.length; q++) {
+      if ((q < Long.SIZE && (candidates & 1L << q) == 0) || skipped[q])
+        continue;
+      if (ms[q] == null)
+        ms[q] = patterns[q].getPattern().matcher(token);
+      else ms[q].reset(token);
+      if (ms[q].matches())
+        return patterns[q].getName();
+    }
+    return "";
+  }
+
+  /**
+   * A token and its shape.
+   */
+  private static final class Entry {
+    final String token;
+    final String shape;
+
+    Entry(String token, String shape) {
+      this.token = token;
+      this.shape = shape;
+    }
+  }
+}
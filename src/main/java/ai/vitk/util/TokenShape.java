@@ -1,5 +1,7 @@
 package ai.vitk.util;
 
+import ai.vitk.type.Token;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -98,6 +100,25 @@ public class TokenShape {
     EXTENDED_PATTERNS.addAll(COMMON_PATTERNS);
   }
 
+  /**
+   * The classifier of the common patterns, made at its first use.
+   */
+  private static final class Common {
+    static final int SIZE = COMMON_PATTERNS.size();
+    static final ShapeClassifier CLASSIFIER = new ShapeClassifier(COMMON_PATTERNS, CACHE_CAPACITY);
+  }
+
+  /**
+   * The classifier of the extended patterns, made at its first use.
+   */
+  private static final class Extended {
+    static final int SIZE = EXTENDED_PATTERNS.size();
+    static final ShapeClassifier CLASSIFIER = new ShapeClassifier(EXTENDED_PATTERNS, CACHE_CAPACITY);
+  }
+
+  /** The number of shapes kept by the classifiers of the common and the extended patterns. */
+  static final int CACHE_CAPACITY = 1 << 14;
+
   /**
    * Detects and returns the shape of a given token or an empty string
    * if the token does not have any special shape (number, date, weight, etc.)
@@ -120,9 +141,30 @@ public class TokenShape {
    * @return the shape of the token
    * */
   public static String shape(String token, List<ai.vitk.type.Pattern> patterns) {
+    // the common and the extended patterns have their classifiers, as long as they are not changed
+    if (patterns == COMMON_PATTERNS && patterns.size() == Common.SIZE)
+      return Common.CLASSIFIER.shape(token);
+    if (patterns == EXTENDED_PATTERNS && patterns.size() == Extended.SIZE)
+      return Extended.CLASSIFIER.shape(token);
     for (ai.vitk.type.Pattern p : patterns) 
       if (!p.getName().equals("PHRASE") && p.getPattern().matcher(token).matches())
         return p.getName();
     return "";
   }
+
+  /**
+   * Detects the shapes of some tokens at once, using the common patterns.
+   *
+   * @param tokens some tokens
+   * @return the shape of each token, in the order of the tokens, an empty string
+   * for the tokens which do not have any particular shape.
+   */
+  public static List<String> shapes(List<Token> tokens) {
+    if (COMMON_PATTERNS.size() == Common.SIZE)
+      return Common.CLASSIFIER.shapes(tokens);
+    final List<String> shapes = new ArrayList<>(tokens.size());
+    for (Token token : tokens)
+      shapes.add(shape(token.getWord(), COMMON_PATTERNS));
+    return shapes;
+  }
 }
@@ -0,0 +1,406 @@
+package ai.vitk.tok;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LexiconTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Lexicon lexicon(String... words) {
+        final Lexicon lexicon = new Lexicon();
+        for (String word : words) {
+            lexicon.addWord(word);
+        }
+        return lexicon;
+    }
+
+    private static Lexicon roundTrip(Lexicon lexicon) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        lexicon.saveBinary(output);
+        return new Lexicon().loadBinary(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    @Test
+    public void givenLexicon_whenSavedAndLoadedInBinary_thenSameWords() throws IOException {
+        final Lexicon lexicon = lexicon("học", "học sinh", "học sinh viên", "Hà Nội", "hà nội", "an");
+        final Lexicon loaded = roundTrip(lexicon);
+        assertNotNull(loaded);
+        assertEquals(lexicon.numNodes(), loaded.numNodes());
+        assertEquals(lexicon.toString(), loaded.toString());
+        assertTrue(loaded.hasWord("học sinh"));
+        assertTrue(loaded.hasWord("Hà Nội"));
+        assertFalse(loaded.hasWord("học sinh "));
+        assertFalse(loaded.hasWord("Hà"));
+        assertTrue(loaded.isPrefix("học sinh v"));
+    }
+
+    @Test
+    public void givenLexicon_whenSavedAndLoadedInXml_thenSameWords() throws Exception {
+        final Lexicon lexicon = lexicon("học", "học sinh", "học sinh viên", "Hà Nội", "hà nội", "an", "a");
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        lexicon.save(output);
+        // a word end is written among the children, as a '*' node
+        assertTrue(output.toString("UTF-8").contains("<n c=\"a\"><n c=\"*\"/><n c=\"n\"><n c=\"*\"/></n></n>"));
+        final Lexicon loaded = new Lexicon().load(new ByteArrayInputStream(output.toByteArray()));
+        assertNotNull(loaded);
+        assertEquals(lexicon.numNodes(), loaded.numNodes());
+        assertEquals(lexicon.toString(), loaded.toString());
+        assertTrue(loaded.hasWord("học sinh viên"));
+        assertFalse(loaded.hasWord("học sinh "));
+    }
+
+    @Test
+    public void givenFrozenLexicon_whenAddingWord_thenRejected() {
+        final Lexicon lexicon = lexicon("học sinh", "học");
+        assertFalse(lexicon.addWord("học"));
+        // h, ọ, c, ' ', s, i, n, h
+        assertEquals(8, lexicon.numNodes());
+        assertEquals("_(h(ọ(c( (s(i(n(h(*))))), *))))", lexicon.toString());
+        lexicon.freeze();
+        assertTrue(lexicon.hasWord("học"));
+        try {
+            lexicon.addWord("học viên");
+            fail();
+        } catch (IllegalStateException e) {
+            assertFalse(lexicon.isPrefix("học v"));
+        }
+    }
+
+    @Test
+    public void givenWordInTwoCases_whenLookingUp_thenStoredOnceAndCaseSensitive() throws IOException {
+        final Lexicon lexicon = lexicon("Hà Nội", "hà nội", "Hà Giang");
+        // h, à, ' ', n, ộ, i, g, i, a, n, g
+        assertEquals(11, lexicon.numNodes());
+        assertTrue(lexicon.hasWord("Hà Nội"));
+        assertTrue(lexicon.hasWord("hà nội"));
+        assertFalse(lexicon.hasWord("HÀ NỘI"));
+        assertFalse(lexicon.hasWord("hà giang"));
+        assertTrue(lexicon.hasWordIgnoreCase("HÀ GIANG"));
+        assertTrue(lexicon.hasLowerCaseWord("HÀ NỘI"));
+        assertFalse(lexicon.hasLowerCaseWord("Hà Giang"));
+        assertTrue(lexicon.isPrefix("Hà G"));
+        assertFalse(lexicon.isPrefix("hà g"));
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        lexicon.saveBinary(output);
+        final Lexicon copy = new Lexicon().loadBinary(new ByteArrayInputStream(output.toByteArray()));
+        final List<String> words = new ArrayList<>();
+        copy.forEachWord(words::add);
+        assertEquals(Arrays.asList("Hà Giang", "hà nội", "Hà Nội"), words);
+    }
+
+    @Test
+    public void givenCoreLexicon_whenLookingUpMixedCasePrefixes_thenCasesOfTheWordsBelow() {
+        final Lexicon core = new Lexicon().loadBinary(Lexicon.class.getResourceAsStream(Lexicons.CORE));
+        assertTrue(core.isPrefix("Bắc Đ"));
+        assertFalse(core.isPrefix("bắc đ"));
+        assertTrue(core.isPrefix("bom A"));
+        assertFalse(core.isPrefix("BOM A"));
+        assertTrue(core.isPrefix("Hà Gi") && core.isPrefix("hà gi"));
+        // every prefix of a word in the case of the word
+        core.forEachWord(word -> {
+            for (int k = 1; k <= word.length(); k++) {
+                assertTrue(word, core.isPrefix(word.substring(0, k)));
+            }
+        });
+    }
+
+    @Test
+    public void givenBadMagic_whenLoadingBinary_thenNull() {
+        final InputStream input = new ByteArrayInputStream("<?xml version=\"1.0\"?>".getBytes());
+        assertEquals(null, new Lexicon().loadBinary(input));
+    }
+
+    @Test
+    public void givenBundledBinaryLexicon_whenLoading_thenSameAsXmlLexicon() {
+        final Lexicon expected = LexiconCompiler.compile(
+            Lexicon.class.getResourceAsStream("/tok/lexicon.xml"),
+            Arrays.asList(
+                Lexicon.class.getResourceAsStream("/tok/provinces.txt"),
+                Lexicon.class.getResourceAsStream("/tok/districts.txt")
+            )
+        );
+        final Lexicon actual = new Lexicon().loadBinary(Lexicon.class.getResourceAsStream("/tok/lexicon.bin"));
+        assertNotNull(actual);
+        assertEquals(expected.numNodes(), actual.numNodes());
+        assertEquals(expected.toString(), actual.toString());
+        // the case forms are not printed
+        final List<String> expectedWords = new ArrayList<>();
+        expected.forEachWord(expectedWords::add);
+        final List<String> actualWords = new ArrayList<>();
+        actual.forEachWord(actualWords::add);
+        assertEquals(expectedWords, actualWords);
+    }
+
+    @Test
+    public void givenLexicon_whenMapped_thenSameWords() throws IOException {
+        final Lexicon lexicon = lexicon("học", "học sinh", "học sinh viên", "Hà Nội", "hà nội", "an");
+        final File file = folder.newFile("lexicon.map");
+        try (OutputStream output = new FileOutputStream(file)) {
+            MappedDictionary.write(lexicon, output);
+        }
+        final MappedDictionary dictionary = MappedDictionary.open(file.getPath());
+        for (String word : Arrays.asList("học", "học sinh", "học sinh viên", "Hà Nội", "hà nội", "an")) {
+            assertTrue(word, dictionary.hasWord(word));
+        }
+        for (String word : Arrays.asList("", "h", "học ", "học sinh v", "Hà", "hà Nội", "anh")) {
+            assertFalse(word, dictionary.hasWord(word));
+        }
+        assertTrue(dictionary.isPrefix("học sinh v"));
+        assertFalse(dictionary.isPrefix("học sinh x"));
+        assertFalse(dictionary.isPrefix(""));
+    }
+
+    private static final String[] PHRASE = "học sinh viên học sinh hà nội an".split(" ");
+
+    /**
+     * Gets the words [i, j) of a phrase found by a cursor.
+     */
+    private static List<String> walk(Dictionary dictionary, String[] syllables) {
+        final List<String> words = new ArrayList<>();
+        final Dictionary.Cursor cursor = dictionary.cursor(syllables);
+        for (int i = 0; i < syllables.length; i++) {
+            cursor.start(i);
+            for (int j = i; j < syllables.length && cursor.next(); j++) {
+                if (cursor.isWord()) {
+                    words.add(i + "-" + (j + 1));
+                }
+                if (!cursor.canContinue()) {
+                    break;
+                }
+            }
+        }
+        return words;
+    }
+
+    private static List<String> lookup(Dictionary dictionary, String[] syllables) {
+        final List<String> words = new ArrayList<>();
+        for (int i = 0; i < syllables.length; i++) {
+            for (int j = i + 1; j <= syllables.length; j++) {
+                if (dictionary.hasWord(String.join(" ", Arrays.copyOfRange(syllables, i, j)))) {
+                    words.add(i + "-" + j);
+                }
+            }
+        }
+        return words;
+    }
+
+    @Test
+    public void givenDictionaries_whenWalkingWithCursor_thenSameWordsAsLookups() throws IOException {
+        final Lexicon lexicon = lexicon("học", "học sinh", "học sinh viên", "Hà Nội", "hà nội", "an", "sinh");
+        final File file = folder.newFile("lexicon.map");
+        try (OutputStream output = new FileOutputStream(file)) {
+            MappedDictionary.write(lexicon, output);
+        }
+        final Dictionary plain = lexicon::hasWord;
+        final List<String> expected = lookup(lexicon, PHRASE);
+        assertEquals(Arrays.asList("0-1", "0-2", "0-3", "1-2", "3-4", "3-5", "4-5", "5-7", "7-8"), expected);
+        assertEquals(expected, walk(lexicon, PHRASE));
+        assertEquals(expected, walk(plain, PHRASE));
+        assertEquals(expected, walk(MappedDictionary.open(file.getPath()), PHRASE));
+        assertEquals(expected, walk(DawgDictionary.of(lexicon), PHRASE));
+        assertEquals(expected, walk(SyllableDictionary.of(lexicon), PHRASE));
+        assertEquals(expected, walk(BloomDictionary.of(lexicon), PHRASE));
+    }
+
+    @Test
+    public void givenBloomFilter_whenLookingUpNonWords_thenRejectedWithoutBase() {
+        final List<String> words = Arrays.asList("học", "học sinh", "học sinh viên", "Hà Nội", "an");
+        final List<String> lookups = new ArrayList<>();
+        final Dictionary base = word -> {
+            lookups.add(word);
+            return words.contains(word);
+        };
+        final BloomDictionary dictionary = BloomDictionary.of(base, words, 0.001);
+        for (String word : words) {
+            assertTrue(word, dictionary.hasWord(word));
+        }
+        for (String word : Arrays.asList("", "học ", "sinh viên", "Hà", "hà nội")) {
+            assertFalse(word, dictionary.hasWord(word));
+        }
+        assertEquals(10, dictionary.probes());
+        assertEquals(5, dictionary.rejections() + dictionary.falsePositives());
+        assertEquals(words.size() + dictionary.falsePositives(), lookups.size());
+        assertEquals(lookup(dictionary, PHRASE), walk(dictionary, PHRASE));
+    }
+
+    @Test
+    public void givenWords_whenInterningSyllables_thenSameWordsAndPrefixes() {
+        final Lexicon lexicon = lexicon("học", "học sinh", "học sinh viên", "Hà Nội", "hà nội", "an", "sinh");
+        final SyllableDictionary dictionary = SyllableDictionary.of(lexicon);
+        // học, sinh, viên, hà, nội, an: the syllables are folded
+        assertEquals(6, dictionary.numSyllables());
+        assertEquals(-1, dictionary.id("viện"));
+        for (String word : Arrays.asList("", "h", "học ", "học sinh v", "Hà", "hà Nội", "anh", "sinh viên")) {
+            assertFalse(word, dictionary.hasWord(word));
+            assertEquals(word, lexicon.isPrefix(word), dictionary.isPrefix(word));
+        }
+        assertTrue(dictionary.hasWord("học sinh viên"));
+        assertTrue(dictionary.hasWord("Hà Nội"));
+        assertFalse(dictionary.hasWord("Học sinh"));
+        assertTrue(dictionary.hasLowerCaseWord("Học Sinh"));
+        assertTrue(dictionary.hasLowerCaseWord("HÀ NỘI"));
+        assertTrue(dictionary.isPrefix("học sinh vi"));
+        assertFalse(dictionary.isPrefix("học sinh x"));
+    }
+
+    @Test
+    public void givenReloadableDictionary_whenWordListChanges_thenNewWordsAfterReload() throws Exception {
+        final File file = folder.newFile("words.txt");
+        Files.write(file.toPath(), Arrays.asList("Hà Nội", "sinh viên"), StandardCharsets.UTF_8);
+        final ReloadableDictionary dictionary = ReloadableDictionary.of(file.toPath());
+        assertTrue(dictionary.hasWord("hà nội"));
+        final Dictionary.Cursor cursor = dictionary.cursor(new String[] {"sinh", "viên"});
+        Files.write(file.toPath(), Arrays.asList("Hà Nội", "học sinh"), StandardCharsets.UTF_8);
+        assertFalse(dictionary.hasWord("học sinh"));
+        final Dictionary reloaded = dictionary.reload().get();
+        assertTrue(dictionary.snapshot() == reloaded);
+        assertTrue(dictionary.hasWord("học sinh"));
+        assertFalse(dictionary.hasWord("sinh viên"));
+        // a cursor keeps the words of its snapshot
+        cursor.start(0);
+        assertTrue(cursor.next() && cursor.next() && cursor.isWord());
+        // a failed reload keeps the current words
+        Files.delete(file.toPath());
+        try {
+            dictionary.reload().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(dictionary.hasWord("học sinh"));
+        }
+    }
+
+    @Test
+    public void givenReloadsFinishingOutOfOrder_whenPublishing_thenLatestReloadKept() throws Exception {
+        final List<Runnable> tasks = new ArrayList<>();
+        final AtomicInteger loads = new AtomicInteger();
+        final ReloadableDictionary dictionary = new ReloadableDictionary(lexicon("w0"), () -> lexicon("w" + loads.incrementAndGet()));
+        final CompletableFuture<Dictionary> first = dictionary.reload(tasks::add);
+        final CompletableFuture<Dictionary> second = dictionary.reload(tasks::add);
+        tasks.get(1).run();
+        tasks.get(0).run();
+        // the first reload ends last, with the words read last, but it was started first
+        assertTrue(dictionary.hasWord("w1"));
+        assertFalse(dictionary.hasWord("w2"));
+        assertTrue(first.get() == second.get());
+
+        // a copy reloads from the same file
+        final File file = folder.newFile("words.txt");
+        Files.write(file.toPath(), Arrays.asList("học sinh"), StandardCharsets.UTF_8);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(new Tokenizer(ReloadableDictionary.of(file.toPath())));
+        }
+        final Tokenizer tokenizer;
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            tokenizer = (Tokenizer) input.readObject();
+        }
+        assertEquals("học sinh", tokenizer.tokenize("học sinh").get(0).getWord());
+    }
+
+    @Test
+    public void givenOverlays_whenAddingAndSuppressingWords_thenBaseUnchanged() {
+        final Lexicon base = lexicon("học", "học sinh", "học sinh viên", "hà nội", "an", "sinh").freeze();
+        final OverlayDictionary overlay = OverlayDictionary.of(base,
+            Arrays.asList("sinh viên", "viên"), Arrays.asList("học sinh", "an"));
+        assertTrue(overlay.hasWord("học sinh viên"));
+        assertTrue(overlay.hasWord("sinh viên"));
+        assertFalse(overlay.hasWord("học sinh"));
+        assertTrue(base.hasWord("học sinh"));
+        assertTrue(overlay.isPrefix("học sinh v"));
+        assertEquals(lookup(overlay, PHRASE), walk(overlay, PHRASE));
+
+        // a second layer adds back a suppressed word of the first
+        final OverlayDictionary top = new OverlayDictionary(overlay);
+        top.addWord("an");
+        top.suppressWord("viên");
+        assertTrue(top.hasLowerCaseWord("An"));
+        assertFalse(top.hasWord("viên"));
+        assertEquals(lookup(top, PHRASE), walk(top, PHRASE));
+        top.freeze();
+        try {
+            top.addWord("học sinh");
+            fail();
+        } catch (IllegalStateException e) {
+            assertFalse(top.hasWord("học sinh"));
+        }
+    }
+
+    @Test
+    public void givenWords_whenMinimized_thenSameWordsWithSharedSuffixes() throws IOException {
+        final List<String> words = Arrays.asList("học sinh", "Học sinh", "nữ sinh", "Nữ sinh", "sinh", "an", "ăn");
+        final DawgDictionary dawg = DawgDictionary.of(words);
+        for (String word : words) {
+            assertTrue(word, dawg.hasWord(word));
+        }
+        for (String word : Arrays.asList("", "học", "học sinh ", "Sinh", "sin", "nữ Sinh")) {
+            assertFalse(word, dawg.hasWord(word));
+        }
+        assertTrue(dawg.isPrefix("nữ s"));
+        assertFalse(dawg.isPrefix("nữ x"));
+        // the suffix " sinh" of the four words and the word "sinh" share their states
+        assertEquals(11, dawg.numStates());
+        final File file = folder.newFile("dawg.map");
+        try (OutputStream output = new FileOutputStream(file)) {
+            dawg.write(output);
+        }
+        final MappedDictionary mapped = MappedDictionary.open(file.getPath());
+        for (String word : words) {
+            assertTrue(word, mapped.hasWord(word));
+        }
+        assertFalse(mapped.hasWord("học"));
+    }
+
+    @Test
+    public void givenDictionaries_whenComputingStatistics_thenSameWordsAndShape() {
+        final List<String> words = Arrays.asList("học", "học sinh", "Học sinh", "học sinh viên", "hà nội", "an");
+        final Lexicon lexicon = lexicon(words.toArray(new String[0])).freeze();
+        final DictionaryStatistics statistics = lexicon.statistics();
+        assertEquals(6, statistics.numWords());
+        assertEquals(lexicon.numNodes(), statistics.numNodes());
+        assertEquals(13, statistics.maxWordLength());
+        assertEquals(3, statistics.maxWordSyllables());
+        // the root has the children 'a' and 'h', and 'h' the children 'à' and 'ọ'
+        assertEquals(2, statistics.fanOut(2));
+        assertTrue(statistics.estimatedBytes() > 0);
+
+        for (Dictionary dictionary : Arrays.<Dictionary>asList(SyllableDictionary.of(words), DawgDictionary.of(words))) {
+            final DictionaryStatistics other = dictionary.statistics();
+            assertEquals(6, other.numWords());
+            assertEquals(13, other.maxWordLength());
+            assertEquals(3, other.maxWordSyllables());
+        }
+        final OverlayDictionary overlay = OverlayDictionary.of(lexicon, Arrays.asList("sinh viên"), Arrays.asList("an"));
+        assertEquals(8, overlay.statistics().numWords());
+        assertNull(((Dictionary) word -> false).statistics());
+    }
+
+}
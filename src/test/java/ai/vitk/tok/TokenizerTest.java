@@ -4,13 +4,18 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import ai.vitk.type.Token;
+import ai.vitk.util.PatternFilter;
+import ai.vitk.util.ShapeClassifier;
+import ai.vitk.util.TokenShape;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -66,6 +71,221 @@ public class TokenizerTest {
         );
     }
 
+    @Test
+    public void givenDecomposedDiacritics_whenTokenizing_thenOriginalTokensReturned() {
+        // "Hà Nội" and "hòa bình" written with combining marks
+        checkTokenization(
+            "Ha\u0300 Nô\u0323i mong ho\u0300a bi\u0300nh",
+            "Ha\u0300 Nô\u0323i", "mong", "ho\u0300a bi\u0300nh"
+        );
+        final TextNormalizer normalizer = new TextNormalizer();
+        assertEquals("hoà bình kĩ thuỷ", normalizer.normalize("hòa bình kỹ thủy"));
+    }
+
+    @Test
+    public void givenRepeatedSyllables_whenCached_thenSameStringsAndBoundedSize() {
+        final SyllableCache cache = new SyllableCache(4);
+        final TextNormalizer.Text text = new TextNormalizer().text("thủy thủy kỹ");
+        final SyllableCache.Syllable first = cache.get(text, 0, 4);
+        final SyllableCache.Syllable second = cache.get(text, 5, 9);
+        assertTrue(first == second);
+        assertEquals("thủy", first.original);
+        assertEquals("thuỷ", first.normalised);
+        assertEquals("kĩ", cache.get(text, 10, 12).normalised);
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+
+        final TextNormalizer.Text many = new TextNormalizer().text("a b c d e f g h i k l m n o p q");
+        for (int j = 0; j < many.length(); j += 2) {
+            cache.get(many, j, j + 1);
+        }
+        assertEquals(4, cache.capacity());
+        assertTrue(cache.size() <= 4);
+    }
+
+    @Test
+    public void givenPatterns_whenScanning_thenEachPartMatchedAsTextOfItsOwn() {
+        final PatternScanner scanner = new PatternScanner(Arrays.asList(
+            new ai.vitk.type.Pattern("B", java.util.regex.Pattern.compile("b+"), 1),
+            new ai.vitk.type.Pattern("A", java.util.regex.Pattern.compile("\\ba+\\b"), 0)));
+        // "aa" is a word once "b" is taken out of "aab"
+        final List<String> matches = scanner.scan("aab aa c", 0, 8).stream()
+            .map(match -> match.name + ":" + match.start + "-" + match.end)
+            .collect(Collectors.toList());
+        assertEquals(Arrays.asList("A:0-2", "B:2-3", "A:4-6", "null:7-8"), matches);
+        // a long lookbehind does not see the characters before the part
+        final PatternScanner behind = new PatternScanner(Arrays.asList(
+            new ai.vitk.type.Pattern("Q", java.util.regex.Pattern.compile("Q"), 2),
+            new ai.vitk.type.Pattern("B", java.util.regex.Pattern.compile("(?<=Q.{7})b"), 1)));
+        assertEquals(Arrays.asList("null:0-1", "Q:1-2", "null:2-10"), behind.scan("xQ1234567b", 0, 10).stream()
+            .map(match -> match.name + ":" + match.start + "-" + match.end)
+            .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void givenPlainText_whenLexing_thenSameMatchesAsPatterns() {
+        final PatternScanner scanner = new PatternScanner(PatternSet.COMMON.patterns());
+        final String text = "Hôm nay, Nguyễn Văn An đi học 3 buổi (sáng và chiều)…";
+        final List<String> matches = PlainTextLexer.scan(text, 0, text.length()).stream()
+            .map(match -> match.name + ":" + text.substring(match.start, match.end))
+            .collect(Collectors.toList());
+        assertEquals(scanner.scan(text, 0, text.length()).stream()
+            .map(match -> match.name + ":" + text.substring(match.start, match.end))
+            .collect(Collectors.toList()), matches);
+        assertEquals("NAME:Nguyễn Văn An", matches.get(3));
+        // a date is left to the patterns
+        Assert.assertNull(PlainTextLexer.scan("ngày 12/10", 0, 10));
+    }
+
+    @Test
+    public void givenPatterns_whenFiltering_thenOnlyPossibleStartsAndRequiredCharacters() {
+        final PatternFilter filter = new PatternFilter(Arrays.asList(
+            new ai.vitk.type.Pattern("DATE", java.util.regex.Pattern.compile("\\b\\d{1,2}(/\\d{1,2})+\\b"), 0),
+            new ai.vitk.type.Pattern("WORD", java.util.regex.Pattern.compile("(?<!@)\\w*"), 0)));
+        assertTrue(filter.mayStart(0, '1'));
+        assertTrue(!filter.mayStart(0, 'a') && !filter.mayStart(0, '/'));
+        assertTrue(filter.isRequired(0, '/') && !filter.isRequired(0, '1'));
+        // a pattern which may match no character may start anywhere
+        assertTrue(filter.mayStart(1, '@') && filter.mayBeEmpty(1) && filter.isFree(1));
+        // the characters read before a match by the word boundaries and lookbehinds
+        assertEquals(1, filter.behind(0));
+        assertEquals(1, filter.behind(1));
+        assertEquals(17, new PatternFilter(Arrays.asList(
+            new ai.vitk.type.Pattern("B", java.util.regex.Pattern.compile("(?<=Q.{7}(?<!\\bx))b"), 0))).behind(0));
+    }
+
+    @Test
+    public void givenTokens_whenClassifyingShapes_thenFirstMatchingPatternOfTheList() {
+        final List<Token> tokens = RegExpTokenizer.split("Ông Nguyễn Văn An gửi 12/10 lúc 3:45 tới a@b.com , 50% iPhone USA");
+        final ShapeClassifier classifier = new ShapeClassifier(TokenShape.EXTENDED_PATTERNS, 4);
+        final List<String> expected = new ArrayList<>();
+        for (Token token : tokens) {
+            String shape = "";
+            for (ai.vitk.type.Pattern p : TokenShape.EXTENDED_PATTERNS) {
+                if (!p.getName().equals("PHRASE") && p.getPattern().matcher(token.getWord()).matches()) {
+                    shape = p.getName();
+                    break;
+                }
+            }
+            expected.add(shape);
+        }
+        assertEquals(expected, classifier.shapes(tokens));
+        assertEquals(expected, classifier.shapes(tokens));
+        assertEquals("DATE_1", TokenShape.shape("12/10"));
+        assertEquals("", TokenShape.shape("gửi"));
+        assertEquals("ALLCAP", TokenShape.shapes(tokens).get(tokens.size() - 1));
+    }
+
+    @Test
+    public void givenPatternSet_whenTokenizing_thenOnlyItsPatternsMatched() {
+        checkTokenization("ngày 12/10", "ngày", "12/10");
+        tokenizer = new Tokenizer(PatternSet.COMMON.remove("DATE_1", "DATE_2", "DATE_3", "FRACTION"));
+        checkTokenization("ngày 12/10", "ngày", "12", "/", "10");
+
+        final String definition = "<patterns>\n"
+            + "  <pattern><name>NUMBER</name><regexp>\n    [0-9]+\n    (/[0-9]+)*\n  </regexp><priority>1</priority></pattern>\n"
+            + "  <pattern><name>PHRASE</name><regexp>[\\p{Ll}\\s]+</regexp><priority>0</priority></pattern>\n"
+            + "</patterns>";
+        final PatternSet patterns = PatternSet.load(new ByteArrayInputStream(definition.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("[0-9]+(/[0-9]+)*", patterns.patterns().get(0).getPattern().pattern());
+        tokenizer = new Tokenizer(patterns);
+        assertEquals("ngày 12/10", tokenize("ngày 12/10 !"));
+    }
+
+    @Test(timeout = 10000)
+    public void givenBacktrackingPattern_whenTokenizing_thenPatternGivenUpWithinBudget() {
+        // ((\p{Ll})\2*)+! backtracks for 2^n steps over n letters not followed by '!',
+        // the backreference keeping the matcher from memoizing the loop
+        final PatternSet patterns = PatternSet.of(Arrays.asList(
+            new ai.vitk.type.Pattern("BAD", java.util.regex.Pattern.compile("((\\p{Ll})\\2*)+!"), 1),
+            new ai.vitk.type.Pattern("PHRASE", java.util.regex.Pattern.compile("[\\p{Ll}\\s]+"), 0)));
+        assertEquals(PatternScanner.BUDGET, patterns.budget());
+        tokenizer = new Tokenizer(patterns);
+        assertEquals("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa", tokenize("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa !"));
+        assertEquals(Long.valueOf(1), patterns.exhausted().get("BAD"));
+        assertTrue(patterns.withBudget(0).exhausted().isEmpty());
+    }
+
+    @Test
+    public void givenScannedText_whenScannerDropped_thenScannerCollected() throws Exception {
+        PatternScanner scanner = new PatternScanner(TokenShape.COMMON_PATTERNS);
+        scanner.scan("Hà Nội, 12/3/2020", 0, 17);
+        final java.lang.ref.WeakReference<PatternScanner> reference = new java.lang.ref.WeakReference<>(scanner);
+        scanner = null;
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        // the scan kept by this thread does not keep its scanner
+        Assert.assertNull(reference.get());
+    }
+
+    @Test
+    public void givenText_whenTokenizing_thenTokensKeepTheirOffsets() {
+        final String text = " Thủ tướng phát  biểu ở Hà Nội ngày 12/10.";
+        final List<Token> tokens = tokenizer.tokenize(text);
+        final List<String> spans = tokens.stream()
+            .map(token -> text.substring(token.getBegin(), token.getEnd()))
+            .collect(Collectors.toList());
+        assertEquals(Arrays.asList("Thủ tướng", "phát  biểu", "ở", "Hà Nội", "ngày", "12/10", "."), spans);
+        // the white spaces of a word are single spaces
+        assertEquals("phát biểu", tokens.get(1).getWord());
+        for (Token word : RegExpTokenizer.split(text)) {
+            assertEquals(word.getWord(), text.substring(word.getBegin(), word.getEnd()));
+        }
+        // a name is not merged over a part left out
+        checkTokenization("Thủ © tướng phát biểu", "Thủ", "tướng", "phát biểu");
+    }
+
+    @Test
+    public void givenSpans_whenTokenizing_thenSpansOfTheTokensFilled() {
+        final TokenSpans spans = new TokenSpans(2);
+        for (String text : Arrays.asList(" Ông  Ba phát  biểu ở Hà Nội ngày 12/10.", "Thủ tướng phát biểu", "Thủ © tướng phát biểu")) {
+            final List<Token> tokens = tokenizer.tokenize(text);
+            assertTrue(spans == tokenizer.tokenize(text, spans));
+            assertEquals(tokens.size(), spans.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                assertEquals(tokens.get(i).getBegin(), spans.begin(i));
+                assertEquals(tokens.get(i).getEnd(), spans.end(i));
+                assertEquals(tokens.get(i).getLemma(), spans.typeName(i));
+                assertEquals(tokens.get(i).getWord(), spans.word(i, text));
+            }
+        }
+        assertEquals(TokenSpans.WORD, PatternSet.COMMON.typeCode("WORD"));
+        assertEquals("NAME", PatternSet.COMMON.typeName(PatternSet.COMMON.typeCode("NAME")));
+        // the codes are those of each set, of which there may be any number
+        final List<ai.vitk.type.Pattern> many = new ArrayList<>();
+        for (int q = 0; q < 2 * PatternSet.MAX_TYPES; q++) {
+            many.add(new ai.vitk.type.Pattern("P" + q, java.util.regex.Pattern.compile("p" + q), 0));
+        }
+        assertEquals(PatternSet.MAX_TYPES, PatternSet.of(many.subList(0, PatternSet.MAX_TYPES)).typeCode("P126"));
+        assertEquals(1, PatternSet.of(many.subList(PatternSet.MAX_TYPES, 2 * PatternSet.MAX_TYPES)).typeCode("P127"));
+        try {
+            PatternSet.of(many);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // more names than codes
+        }
+    }
+
+    @Test
+    public void givenCustomDictionary_whenTokenizing_thenNamesMergedUsingIt() {
+        checkTokenization("Thủ tướng phát biểu", "Thủ tướng", "phát biểu");
+        final Lexicon lexicon = new Lexicon();
+        lexicon.addWord("phát biểu");
+        tokenizer = new Tokenizer(lexicon);
+        checkTokenization("Thủ tướng phát biểu", "Thủ", "tướng", "phát biểu");
+        lexicon.addWord("thủ tướng");
+        checkTokenization("Thủ tướng phát biểu", "Thủ tướng", "phát biểu");
+    }
+
+    @Test
+    public void givenAsyncLoading_whenReady_thenTokenizerLoaded() throws Exception {
+        tokenizer = Tokenizer.loadAsync().get();
+        assertTrue(Lexicons.isLoaded(Lexicons.CORE, Lexicons.EXTRA, Lexicons.VCM));
+        checkTokenization("Hà Nội mùa này vắng những cơn mưa", "Hà Nội", "mùa", "này", "vắng", "những", "cơn", "mưa");
+    }
+
     private void checkTokenization(String text, String... expectedTokens) {
         assertTrue(checkTokenizationMatches(text, expectedTokens));
     }